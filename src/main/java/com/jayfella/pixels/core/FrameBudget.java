@@ -0,0 +1,140 @@
+package com.jayfella.pixels.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shares the time of a frame between the jobs that integrate work into the scene, such as attaching chunks, collision
+ * cells, meshes and light.
+ *
+ * Each job gets a slice: a fraction of the target frame time. A job begins its slice, does work while the slice has
+ * time left and then ends it. The time actually spent is recorded so it can be shown.
+ *
+ * The slices shrink when frames take longer than the target, so less work is integrated while the game is already
+ * struggling to keep up, and grow back to their full size as the frame time recovers. A slice is never smaller than
+ * a minimum amount, so every job always makes some progress.
+ *
+ * This class is not thread-safe.
+ */
+public class FrameBudget {
+
+    // the smallest amount of time a slice gets, no matter how slow the frames are.
+    private static final long MIN_SLICE_NANOS = 100_000L;
+
+    // how far the slices can shrink when the frames are slow.
+    private static final float MIN_SCALE = 0.25f;
+
+    // how much of the average frame time comes from the latest frame.
+    private static final float SMOOTHING = 0.1f;
+
+    private final long targetFrameNanos;
+    private final List<Slice> slices = new ArrayList<>();
+
+    private float averageFrameNanos;
+    private float scale = 1;
+
+    /**
+     * Creates a new frame budget.
+     * @param targetFps the frame rate the slices are measured against.
+     */
+    public FrameBudget(int targetFps) {
+        this.targetFrameNanos = 1_000_000_000L / targetFps;
+        this.averageFrameNanos = targetFrameNanos;
+    }
+
+    /**
+     * Creates a new slice of this budget.
+     * @param name the name of the slice.
+     * @return the new slice.
+     */
+    public Slice createSlice(String name) {
+        Slice slice = new Slice(name);
+        slices.add(slice);
+        return slice;
+    }
+
+    public List<Slice> getSlices() {
+        return Collections.unmodifiableList(slices);
+    }
+
+    public long getTargetFrameNanos() {
+        return targetFrameNanos;
+    }
+
+    /**
+     * Gets how much the slices have been shrunk because of slow frames.
+     * @return a value between 0.25 and 1, where 1 means the slices are at their full size.
+     */
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * Updates the size of the slices using the length of the last frame. Must be called once per frame before any
+     * slice begins.
+     * @param tpf the length of the last frame, in seconds.
+     */
+    public void update(float tpf) {
+        averageFrameNanos += (tpf * 1_000_000_000f - averageFrameNanos) * SMOOTHING;
+        scale = Math.max(MIN_SCALE, Math.min(1, targetFrameNanos / averageFrameNanos));
+    }
+
+    public class Slice {
+
+        private final String name;
+
+        private long start;
+        private long allowance;
+        private long spentNanos;
+
+        private Slice(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Starts measuring the time spent by this slice.
+         * @param fraction the fraction of the target frame time this slice can spend.
+         */
+        public void begin(float fraction) {
+            allowance = Math.max(MIN_SLICE_NANOS, (long) (targetFrameNanos * fraction * scale));
+            start = System.nanoTime();
+        }
+
+        /**
+         * Gets whether or not this slice has any time left.
+         * @return true if the time spent since this slice began is less than its allowance.
+         */
+        public boolean hasTime() {
+            return System.nanoTime() - start < allowance;
+        }
+
+        /**
+         * Stops measuring the time spent by this slice.
+         */
+        public void end() {
+            spentNanos = System.nanoTime() - start;
+        }
+
+        /**
+         * Gets the amount of time this slice could spend the last time it began.
+         * @return the allowance of this slice, in nanoseconds.
+         */
+        public long getAllowanceNanos() {
+            return allowance;
+        }
+
+        /**
+         * Gets the amount of time spent between the last time this slice began and ended.
+         * @return the time spent, in nanoseconds.
+         */
+        public long getSpentNanos() {
+            return spentNanos;
+        }
+    }
+
+}
@@ -7,4 +7,22 @@ import com.jme3.math.Vector2f;
  */
 public interface NoiseEvaluator {
     float evaluate(float x, float y);
+
+    /**
+     * Evaluates a rectangular region of integer coordinates into the given array.
+     * Implementations should override this method if they can evaluate whole rows or regions cheaper than evaluating
+     * each coordinate individually.
+     * @param x0     the x coordinate of the bottom-left of the region.
+     * @param y0     the y coordinate of the bottom-left of the region.
+     * @param width  the width of the region.
+     * @param height the height of the region.
+     * @param out    the array to store the results in, indexed by x + y * width. Must hold at least width * height values.
+     */
+    default void evaluateRegion(int x0, int y0, int width, int height, float[] out) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                out[x + y * width] = evaluate(x0 + x, y0 + y);
+            }
+        }
+    }
 }
@@ -0,0 +1,306 @@
+package com.jayfella.pixels.grid;
+
+import com.jayfella.pixels.core.FrameBudget;
+import com.jayfella.pixels.world.Chunk;
+import com.jayfella.pixels.world.World;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Decides which chunks are generated next.
+ *
+ * Chunk requests wait here instead of in the queue of the thread pool, and only a few are handed to the thread pool at
+ * a time. The waiting requests are ordered by their distance from the player, and chunks in the direction the player
+ * is moving come before chunks behind them. Because they have not been submitted yet, they can be re-ordered when the
+ * player moves and dropped when they are no longer needed. Chunks that are no longer needed after they were submitted
+ * are cancelled, which stops them from running if they haven't started yet. A cancelled chunk that has already started
+ * still occupies a worker, so it keeps counting towards the limit until it finishes and is thrown away.
+ *
+ * Workers push each chunk onto a completion queue when it is done, so finding the finished chunks doesn't mean
+ * checking every submitted chunk each frame. A chunk that fails to generate is logged and dropped, and is loaded again
+ * the next time it is requested.
+ *
+ * Every method must be called from the render thread.
+ */
+public class ChunkLoadScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkLoadScheduler.class);
+
+    private final World world;
+
+    // requests that have not been submitted yet, in the order they will be submitted once sorted.
+    private int[] pending = new int[16];
+    private int pendingCount;
+
+    // the priority and grid position of each pending request packed into one value, so they sort without boxing.
+    private long[] sortKeys = new long[16];
+
+    // jobs that have been submitted to the thread pool, including cancelled jobs that are still running.
+    private final LoadJob[] running;
+    private int runningCount;
+
+    // jobs that have finished, pushed by the workers.
+    private final Queue<LoadJob> completed = new ConcurrentLinkedQueue<>();
+
+    private int center;
+    private int direction;
+    private boolean sorted = true;
+
+    /**
+     * Creates a new scheduler.
+     * @param world      the world the chunks belong to.
+     * @param maxRunning the maximum amount of chunks that can be submitted to the thread pool at once.
+     */
+    public ChunkLoadScheduler(World world, int maxRunning) {
+        this.world = world;
+        this.running = new LoadJob[maxRunning];
+    }
+
+    /**
+     * Requests a chunk to be loaded. Does nothing if the chunk has already been requested.
+     * @param gridX the grid position of the chunk.
+     */
+    public void request(int gridX) {
+
+        if (isScheduled(gridX)) {
+            return;
+        }
+
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+
+        pending[pendingCount++] = gridX;
+        sorted = false;
+    }
+
+    /**
+     * Gets whether or not the chunk at the given grid position is waiting to be loaded or being loaded.
+     * @param gridX the grid position of the chunk.
+     * @return true if the chunk has been requested and hasn't been loaded yet.
+     */
+    public boolean isScheduled(int gridX) {
+
+        for (int i = 0; i < pendingCount; i++) {
+            if (pending[i] == gridX) {
+                return true;
+            }
+        }
+
+        for (int i = 0; i < runningCount; i++) {
+            if (running[i].gridPosition == gridX && !running[i].cancelled) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Gets the amount of chunks that are occupying the thread pool, including cancelled chunks that are still running.
+     * @return the amount of chunks that have been submitted and haven't finished.
+     */
+    public int getRunningCount() {
+        return runningCount;
+    }
+
+    /**
+     * Sets the grid position chunks are prioritized around. The direction of movement is taken from the last center.
+     * @param gridX the grid position of the player.
+     */
+    public void setCenter(int gridX) {
+
+        if (gridX == center) {
+            return;
+        }
+
+        direction = Integer.signum(gridX - center);
+        center = gridX;
+        sorted = false;
+    }
+
+    /**
+     * Drops the requests that are no longer needed and submits the most important requests to the thread pool.
+     * @param required tests whether the chunk at a grid position still needs to be loaded.
+     */
+    public void update(IntPredicate required) {
+
+        // cancel the chunks that are no longer needed. A job that hasn't started is freed straight away. A job that
+        // has started keeps its place until the worker is done with it, and is thrown away when it arrives.
+        for (int i = 0; i < runningCount; i++) {
+
+            LoadJob job = running[i];
+
+            if (job.cancelled || required.test(job.gridPosition)) {
+                continue;
+            }
+
+            job.cancelled = true;
+            job.future.cancel(false);
+
+            if (job.started.compareAndSet(false, true)) {
+                removeRunning(i--);
+            }
+        }
+
+        int kept = 0;
+
+        for (int i = 0; i < pendingCount; i++) {
+            if (required.test(pending[i])) {
+                pending[kept++] = pending[i];
+            }
+        }
+
+        pendingCount = kept;
+
+        if (!sorted) {
+            sortPending();
+            sorted = true;
+        }
+
+        int index = 0;
+
+        while (index < pendingCount && runningCount < running.length) {
+
+            LoadJob job = new LoadJob(new ChunkLoadTask(pending[index++], world));
+            job.future = world.getThreadPool().submit(job);
+
+            running[runningCount++] = job;
+        }
+
+        System.arraycopy(pending, index, pending, 0, pendingCount - index);
+        pendingCount -= index;
+    }
+
+    /**
+     * Passes the chunks that have finished loading to the given consumer until there are none left or the frame budget
+     * has been spent. At least one chunk is passed if there is one, so the chunks keep loading however small the
+     * budget is.
+     * @param consumer the consumer to pass the loaded chunks to.
+     * @param budget   the slice of the frame to spend passing chunks to the consumer. Must have begun.
+     */
+    public void collectCompleted(Consumer<Chunk> consumer, FrameBudget.Slice budget) {
+
+        LoadJob job = completed.poll();
+
+        while (job != null) {
+
+            int index = indexOfRunning(job);
+
+            if (index >= 0) {
+                removeRunning(index);
+            }
+
+            // jobs that were cancelled after they had started only needed to give their place back.
+            if (!job.cancelled) {
+
+                if (job.error != null) {
+                    log.error("Failed to load chunk " + job.gridPosition, job.error);
+                }
+                else if (job.chunk != null) {
+                    consumer.accept(job.chunk);
+                }
+            }
+
+            if (!budget.hasTime()) {
+                break;
+            }
+
+            job = completed.poll();
+        }
+    }
+
+    private int indexOfRunning(LoadJob job) {
+
+        for (int i = 0; i < runningCount; i++) {
+            if (running[i] == job) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void removeRunning(int index) {
+        running[index] = running[--runningCount];
+        running[runningCount] = null;
+    }
+
+    private void sortPending() {
+
+        if (sortKeys.length < pendingCount) {
+            sortKeys = new long[pending.length];
+        }
+
+        for (int i = 0; i < pendingCount; i++) {
+            sortKeys[i] = (long) getPriority(pending[i]) << 32 | (pending[i] & 0xFFFFFFFFL);
+        }
+
+        Arrays.sort(sortKeys, 0, pendingCount);
+
+        for (int i = 0; i < pendingCount; i++) {
+            pending[i] = (int) sortKeys[i];
+        }
+    }
+
+    private int getPriority(int gridX) {
+
+        int offset = gridX - center;
+
+        // closer chunks come first. At the same distance, the chunk in the direction of movement comes first.
+        int behind = Integer.signum(offset) == -direction && direction != 0 ? 1 : 0;
+        return Math.abs(offset) * 2 + behind;
+    }
+
+    private class LoadJob implements Runnable {
+
+        private final int gridPosition;
+        private final ChunkLoadTask task;
+
+        private Future<?> future;
+
+        // set when a worker picks the job up, or when the job is cancelled before that. Whichever comes first wins.
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        // only read and written on the render thread.
+        private boolean cancelled;
+
+        // set by the worker before the job is pushed onto the completion queue.
+        private Chunk chunk;
+        private Exception error;
+
+        private LoadJob(ChunkLoadTask task) {
+            this.gridPosition = task.getGridPosition();
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                chunk = task.call();
+            } catch (Exception ex) {
+                error = ex;
+            }
+
+            completed.add(this);
+        }
+    }
+
+}
@@ -15,6 +15,10 @@ public class ChunkLoadTask implements Callable<Chunk> {
         this.world = world;
     }
 
+    public int getGridPosition() {
+        return gridPosition;
+    }
+
     @Override
     public Chunk call() throws Exception {
         return new Chunk(gridPosition, world);
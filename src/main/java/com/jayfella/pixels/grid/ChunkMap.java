@@ -0,0 +1,168 @@
+package com.jayfella.pixels.grid;
+
+import com.jayfella.pixels.world.Chunk;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Maps the grid position of a chunk to the chunk, without boxing the key.
+ *
+ * The chunks are held in an open-addressing table that is never changed once it is published. Adding or removing a
+ * chunk builds a new table and swaps it in, so any thread can read the map without locking and always sees a complete
+ * table. Chunks are only loaded and unloaded a few at a time, so copying the table is much cheaper than the boxing and
+ * locking it saves on every neighbor lookup.
+ *
+ * Writes are synchronized, but are expected to come from a single thread.
+ */
+public class ChunkMap {
+
+    // grid positions this far from the origin are never loaded, so it marks an empty slot.
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile Table table;
+
+    public ChunkMap() {
+        table = new Table(new Chunk[0]);
+    }
+
+    /**
+     * Creates a map holding the given chunks.
+     * @param chunks the chunks to add to the map.
+     */
+    public ChunkMap(Collection<Chunk> chunks) {
+        table = new Table(chunks.toArray(new Chunk[0]));
+    }
+
+    public Chunk get(int gridX) {
+
+        Table table = this.table;
+        int index = hash(gridX) & table.mask;
+
+        while (true) {
+
+            int key = table.keys[index];
+
+            if (key == gridX) {
+                return table.chunks[index];
+            }
+
+            if (key == EMPTY) {
+                return null;
+            }
+
+            index = (index + 1) & table.mask;
+        }
+    }
+
+    public boolean containsKey(int gridX) {
+        return get(gridX) != null;
+    }
+
+    public int size() {
+        return table.values.size();
+    }
+
+    /**
+     * Gets the chunks in the map at the time of calling. The collection does not change if the map is modified.
+     * @return an unmodifiable collection of the chunks in the map.
+     */
+    public Collection<Chunk> values() {
+        return table.values;
+    }
+
+    /**
+     * Adds a chunk to the map using its grid position, replacing any chunk with the same grid position.
+     * @param chunk the chunk to add.
+     */
+    public synchronized void put(Chunk chunk) {
+
+        if (chunk.getGridPosition() == EMPTY) {
+            throw new IllegalArgumentException("Grid position out of range: " + chunk.getGridPosition());
+        }
+
+        List<Chunk> values = table.values;
+        Chunk[] chunks = new Chunk[values.size() + 1];
+        int count = 0;
+
+        for (Chunk existing : values) {
+            if (existing.getGridPosition() != chunk.getGridPosition()) {
+                chunks[count++] = existing;
+            }
+        }
+
+        chunks[count++] = chunk;
+
+        table = new Table(Arrays.copyOf(chunks, count));
+    }
+
+    /**
+     * Removes the chunk at the given grid position.
+     * @param gridX the grid position of the chunk.
+     * @return the chunk that was removed, or null if there was no chunk at the given position.
+     */
+    public synchronized Chunk remove(int gridX) {
+
+        Chunk removed = get(gridX);
+
+        if (removed == null) {
+            return null;
+        }
+
+        List<Chunk> values = table.values;
+        Chunk[] chunks = new Chunk[values.size() - 1];
+        int count = 0;
+
+        for (Chunk existing : values) {
+            if (existing != removed) {
+                chunks[count++] = existing;
+            }
+        }
+
+        table = new Table(chunks);
+        return removed;
+    }
+
+    private static int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Table {
+
+        private final int[] keys;
+        private final Chunk[] chunks;
+        private final int mask;
+        private final List<Chunk> values;
+
+        private Table(Chunk[] values) {
+
+            // keep the table at most half full so probes stay short.
+            int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, values.length) * 2) << 1);
+
+            this.keys = new int[capacity];
+            this.chunks = new Chunk[capacity];
+            this.mask = capacity - 1;
+            this.values = Collections.unmodifiableList(Arrays.asList(values));
+
+            Arrays.fill(keys, EMPTY);
+
+            for (Chunk chunk : values) {
+
+                int index = hash(chunk.getGridPosition()) & mask;
+
+                while (keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+
+                keys[index] = chunk.getGridPosition();
+                chunks[index] = chunk;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.jayfella.pixels.grid;
+
+import java.util.function.IntConsumer;
+
+/**
+ * The strip of chunks that need to be loaded around the player, stored as a ring buffer.
+ *
+ * The window is 2 * viewDistance + 1 chunks wide. A grid position is stored in the slot gridX modulo the width of the
+ * window, so the chunk that leaves one side of the window when it moves shares its slot with the chunk that enters on
+ * the other side. Moving the window by one chunk evicts exactly one grid position and adds exactly one, no matter how
+ * large the view distance is, and finding out whether a grid position is required is a single array lookup.
+ *
+ * This class is not thread-safe.
+ */
+public class ChunkWindow {
+
+    private final int viewDistance;
+
+    // the grid position each slot holds.
+    private final int[] positions;
+
+    private int center;
+    private boolean initialized;
+
+    public ChunkWindow(int viewDistance) {
+        this.viewDistance = viewDistance;
+        this.positions = new int[viewDistance * 2 + 1];
+    }
+
+    public int getViewDistance() {
+        return viewDistance;
+    }
+
+    public int getCenter() {
+        return center;
+    }
+
+    /**
+     * Moves the center of the window.
+     * @param gridX   the new center of the window.
+     * @param evicted called for every grid position that has left the window.
+     * @param entered called for every grid position that has entered the window.
+     */
+    public void moveTo(int gridX, IntConsumer evicted, IntConsumer entered) {
+
+        if (initialized && gridX == center) {
+            return;
+        }
+
+        int min = gridX - viewDistance;
+        int max = gridX + viewDistance;
+
+        if (initialized && Math.abs((long) gridX - center) < positions.length) {
+
+            // only the positions on the leading edge are new. Each one takes the slot of a position on the trailing edge.
+            int from = gridX > center ? Math.max(min, center + viewDistance + 1) : min;
+            int to = gridX > center ? max : Math.min(max, center - viewDistance - 1);
+
+            center = gridX;
+
+            for (int x = from; x <= to; x++) {
+                replace(x, evicted, entered);
+            }
+        }
+        else {
+
+            // the window has jumped further than its own width, so every slot changes.
+            for (int x = min; x <= max; x++) {
+
+                if (initialized) {
+                    replace(x, evicted, entered);
+                }
+                else {
+                    int slot = slot(x);
+                    positions[slot] = x;
+                    entered.accept(x);
+                }
+            }
+
+            center = gridX;
+            initialized = true;
+        }
+    }
+
+    /**
+     * Calls the given consumer for every grid position in the window.
+     * @param consumer the consumer to call.
+     */
+    public void forEach(IntConsumer consumer) {
+
+        if (!initialized) {
+            return;
+        }
+
+        for (int x = center - viewDistance; x <= center + viewDistance; x++) {
+            consumer.accept(x);
+        }
+    }
+
+    public boolean contains(int gridX) {
+        return initialized && positions[slot(gridX)] == gridX;
+    }
+
+    private void replace(int gridX, IntConsumer evicted, IntConsumer entered) {
+
+        int slot = slot(gridX);
+
+        evicted.accept(positions[slot]);
+
+        positions[slot] = gridX;
+
+        entered.accept(gridX);
+    }
+
+    private int slot(int gridX) {
+        return Math.floorMod(gridX, positions.length);
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.jayfella.pixels.grid;
 
+import com.jayfella.pixels.core.FrameBudget;
 import com.jayfella.pixels.core.GridPos2i;
 import com.jayfella.pixels.core.WorldConstants;
 import com.jayfella.pixels.grid.settings.GridSettings;
@@ -9,43 +10,37 @@ import com.jayfella.pixels.world.World;
 import com.jme3.math.Vector3f;
 
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.stream.Collectors;
 
 public class SceneGrid  {
 
-    // Chunks that are currently being generated.
-    private final List<Future<Chunk>> submittedTasks = new ArrayList<>();
+    // Chunks that are waiting to be generated or are being generated.
+    private final ChunkLoadScheduler chunkLoadScheduler;
 
     // Chunks that are currenty in-scene: loaded and visible to some extent (only the required cells are visible).
-    private final Map<Integer, Chunk> loadedChunks = new HashMap<>();
+    // Written on the render thread, but can be read from any thread.
+    private final ChunkMap loadedChunks = new ChunkMap();
 
-    private final List<Integer> requiredChunks = new ArrayList<>(); // Chunks we require to view everything we need to view.
-    private final Deque<Integer> chunkRemovals = new ArrayDeque<>(); // Chunks we need to remove because they are no longer visible.
-
-    // temporary frame-by-frame lists
-    private final Deque<Integer> chunkAdditions = new ArrayDeque<>(); // Chunks we need to add.
-    private final List<Integer> unneededCells = new ArrayList<>(); // Chunks we need to remove.
+    // Chunks we require to view everything we need to view.
+    private ChunkWindow chunkWindow;
 
-    // Chunks that are currently being loaded.
-    private final Set<Integer> loadingChunks = new HashSet<>();
+    private final Deque<Integer> chunkRemovals = new ArrayDeque<>(); // Chunks we need to remove because they are no longer visible.
 
     // keeps track of whether or not we moved grid positions.
     // Set them so they don't match initially so it forces a refresh.
     private final GridPos2i lastGridPos = new GridPos2i(Integer.MIN_VALUE, Integer.MIN_VALUE, WorldConstants.GRID_BITSHIFT);
     private final GridPos2i currentGridPos = new GridPos2i(Integer.MAX_VALUE, Integer.MAX_VALUE, WorldConstants.GRID_BITSHIFT);
 
-    // keep a count of how many cells we've added and removed per-frame.
-    private int removalIterations = 0;
-    private int additionIterations = 0;
-
     private final World world;
     private final GridSettings gridSettings;
 
+    // the time spent adding and removing chunks each frame.
+    private final FrameBudget.Slice frameBudget;
+
     public SceneGrid(World world, GridSettings gridSettings) {
         this.world = world;
         this.gridSettings = gridSettings;
+        this.chunkLoadScheduler = new ChunkLoadScheduler(world, world.getWorldSettings().getNumThreads());
+        this.frameBudget = world.getFrameBudget().createSlice("Chunks");
     }
 
     public GridSettings getGridSettings() {
@@ -73,33 +68,26 @@ public class SceneGrid  {
             return;
         }
 
-        // iterate over the view distance and add each grid position to a required list regardless of whether it's loaded or not..
-        for (int x = currentGridPos.getX() - gridSettings.getViewDistance(); x <= currentGridPos.getX() + gridSettings.getViewDistance(); x++) {
-            // for (int y = currentGridPos.getY() - gridSettings.getViewDistance(); y <= currentGridPos.getY() + gridSettings.getViewDistance(); y++) {
-                requiredChunks.add(x);
-            // }
-        }
+        // the view distance has changed, so every chunk in the old window goes and every chunk in the new one is requested.
+        if (chunkWindow == null || chunkWindow.getViewDistance() != gridSettings.getViewDistance()) {
 
-        // clear the list of current cell additions.
-        // if we got this far, we need an entirely new set of cells than any other previous call.
-        chunkAdditions.clear();
+            if (chunkWindow != null) {
+                chunkWindow.forEach(chunkRemovals::add);
+            }
 
-        // load cells we do need.
-        // just blanket request all cells in our view distance.
-        // the method that processes this list will not load any cells that already exist.
-        chunkAdditions.addAll(requiredChunks);
+            chunkWindow = new ChunkWindow(gridSettings.getViewDistance());
+        }
 
-        // if we remove the required cells from the loaded cells, we end up with a list of
-        // cells we don't want anymore.
-        unneededCells.addAll(loadedChunks.keySet().stream()
-                .filter(key -> !requiredChunks.contains(key))
-                .collect(Collectors.toList()));
+        // slide the window. Only the chunks that leave it are removed and only the chunks that enter it are requested.
+        chunkWindow.moveTo(currentGridPos.getX(), chunkRemovals::add, chunkLoadScheduler::request);
 
-        chunkRemovals.addAll(unneededCells);
+        if (forceUpdate) {
+            // the scheduler will not load any chunks that already exist.
+            chunkWindow.forEach(chunkLoadScheduler::request);
+        }
 
-        // tidy up after ourselves.
-        requiredChunks.clear();
-        unneededCells.clear();
+        // chunks closest to the player and in the direction they are moving are loaded first.
+        chunkLoadScheduler.setCenter(currentGridPos.getX());
 
         // set our last position to the set position.
         lastGridPos.set(currentGridPos);
@@ -107,44 +95,32 @@ public class SceneGrid  {
     }
 
     private void updateThreadpool() {
+        chunkLoadScheduler.collectCompleted(this::applyChunk, frameBudget);
+    }
 
-        submittedTasks.removeIf(future -> {
-
-            if (future.isCancelled()) {
-                return true;
-            }
+    private void applyChunk(Chunk chunk) {
 
-            if (future.isDone()) {
+        // the chunk left the view while it was loading, or was requested again and loaded twice.
+        if (!chunkWindow.contains(chunk.getGridPosition()) || loadedChunks.containsKey(chunk.getGridPosition())) {
+            chunk.destroy();
+            return;
+        }
 
-                // ThreadedWorker worker;
-                Chunk chunk;
+        world.getWorldNode().attachChild(chunk.getChunkNode());
+        loadedChunks.put(chunk);
 
-                try {
-                    chunk = future.get();
-                } catch (InterruptedException | ExecutionException ex) {
-                    ex.printStackTrace();
-                    throw new RuntimeException(ex);
-                }
+        // the chunk is lit when it is generated, but light still needs to spread between it and its neighbors.
+        chunk.queueBorderLight();
 
-                if (chunk != null) {
-                    applyChunk(chunk);
+        // the chunk only holds block data when it is generated. Queue the meshes of every cell that has something to draw.
+        for (int y = 0; y < WorldConstants.CELL_COUNT_Y; y++) {
 
-                }
+            ChunkCell chunkCell = chunk.getCell(y);
 
-                return true;
+            if (!chunkCell.isEmpty()) {
+                world.getMeshScheduler().requestMesh(chunkCell);
             }
-
-            return false;
-        });
-
-    }
-
-    private void applyChunk(Chunk chunk) {
-        world.getWorldNode().attachChild(chunk.getChunkNode());
-        loadedChunks.put(chunk.getGridPosition(), chunk);
-        loadingChunks.remove(chunk.getGridPosition());
-
-        world.getChunkGenerator().initLightMap(chunk);
+        }
 
         // System.out.println("Attached chunk: " + chunk.getGridPosition() + " with children: " + chunk.getChunkNode().getChildren().size());
     }
@@ -186,61 +162,29 @@ public class SceneGrid  {
 
     public void update(float tpf) {
 
-        updateThreadpool();
+        frameBudget.begin(gridSettings.getFrameBudget());
 
-        Integer chunkRemoval = chunkRemovals.poll();
+        // remove the chunks that are no longer needed, then attach the chunks that have loaded in the time that's left.
+        while (frameBudget.hasTime() && !chunkRemovals.isEmpty()) {
 
-        while (chunkRemoval != null) {
+            int chunkRemoval = chunkRemovals.poll();
 
-            Chunk chunk = loadedChunks.get(chunkRemoval);
+            // the chunk may have come back into view before it was removed.
+            Chunk chunk = chunkWindow.contains(chunkRemoval) ? null : loadedChunks.remove(chunkRemoval);
 
             if (chunk != null) {
-                loadedChunks.remove(chunkRemoval);
                 chunk.destroy();
-
-                // only iterate if we've actually removed a cell.
-                removalIterations++;
-            }
-
-            // if we've removed the maximum amount this frame, wait until the next frame.
-            if (removalIterations % gridSettings.getRemovalsPerFrame() == 0) {
-                chunkRemoval = null;
             }
-
         }
 
-        // reset the removal count.
-        removalIterations = 0;
-
-        Integer chunkAddition = chunkAdditions.poll();
-
-        while (chunkAddition != null) {
-
-            // if this position is loading or already loaded, ignore the cell load request.
-            if (loadingChunks.contains(chunkAddition) || loadedChunks.containsKey(chunkAddition)) {
-                chunkAddition = chunkAdditions.poll();
-                continue;
-            }
-
-            loadingChunks.add(chunkAddition);
-
-            ChunkLoadTask chunkLoadTask = new ChunkLoadTask(chunkAddition, world);
-            submittedTasks.add(world.getThreadPool().submit(chunkLoadTask));
-
-            additionIterations++;
+        updateThreadpool();
 
-            // if we've added the maximum amount this frame, wait until the next frame.
-            if (additionIterations % gridSettings.getAdditionsPerFrame() == 0) {
-                chunkAddition = null;
-            }
-            else {
-                chunkAddition = chunkAdditions.poll();
-            }
+        // drop the chunks that are no longer needed and submit the most important ones.
+        if (chunkWindow != null) {
+            chunkLoadScheduler.update(gridX -> chunkWindow.contains(gridX) && !loadedChunks.containsKey(gridX));
         }
 
-        // reset the addition count.
-        additionIterations = 0;
-
+        frameBudget.end();
     }
 
     public Chunk getChunk(int xGrid) {
@@ -0,0 +1,265 @@
+package com.jayfella.pixels.grid.collision;
+
+import com.jayfella.pixels.core.GridPos2i;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Counts how many owners need each collision cell. Every owner, such as a tracked entity, needs a rectangle of cells.
+ * A cell is required while at least one rectangle covers it, so owners that are far apart don't take each other's
+ * cells away.
+ *
+ * When an owner moves its rectangle, only the cells that entered or left the rectangle are counted. A cell is
+ * reported as required when its first owner arrives and as unneeded when its last owner leaves.
+ *
+ * The counts are kept in an open-addressing table keyed by the packed column and row of each cell, so counting a cell
+ * doesn't box anything. A grid position is only created for the cells that are reported.
+ *
+ * This class is not thread-safe.
+ */
+public class CellDemand {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private final int bitshift;
+
+    // the number of rectangles that cover each required cell, by packed column and row. A count of zero marks an empty
+    // slot, so cells that aren't required are not in the table.
+    private long[] keys = new long[MIN_CAPACITY];
+    private int[] counts = new int[MIN_CAPACITY];
+    private int size;
+
+    // the rectangle of each owner.
+    private final Map<Object, Area> areas = new HashMap<>();
+
+    /**
+     * Creates a new demand for cells.
+     * @param bitshift the bitshift of the grid positions of the cells.
+     */
+    public CellDemand(int bitshift) {
+        this.bitshift = bitshift;
+    }
+
+    /**
+     * Sets the rectangle of cells an owner needs, replacing any rectangle it needed before.
+     * @param owner    the owner of the rectangle.
+     * @param minX     the first column of cells.
+     * @param minY     the first row of cells.
+     * @param maxX     the column after the last column of cells.
+     * @param maxY     the row after the last row of cells.
+     * @param required receives the cells that were not required by anything before.
+     * @param unneeded receives the cells that are no longer required by anything.
+     */
+    public void setArea(Object owner, int minX, int minY, int maxX, int maxY,
+                        Consumer<GridPos2i> required, Consumer<GridPos2i> unneeded) {
+
+        Area area = new Area(minX, minY, maxX, maxY);
+        Area previous = areas.put(owner, area);
+
+        if (previous != null) {
+            release(previous, area, unneeded);
+        }
+
+        retain(area, previous, required);
+    }
+
+    /**
+     * Removes the rectangle of an owner.
+     * @param owner    the owner of the rectangle.
+     * @param unneeded receives the cells that are no longer required by anything.
+     */
+    public void removeArea(Object owner, Consumer<GridPos2i> unneeded) {
+
+        Area previous = areas.remove(owner);
+
+        if (previous != null) {
+            release(previous, null, unneeded);
+        }
+    }
+
+    /**
+     * Gets whether or not any owner needs a cell.
+     * @param gridPos the grid position of the cell.
+     * @return true if the cell is covered by at least one rectangle.
+     */
+    public boolean isRequired(GridPos2i gridPos) {
+        return isRequired(gridPos.getX(), gridPos.getY());
+    }
+
+    /**
+     * Gets whether or not any owner needs a cell.
+     * @param x the column of the cell.
+     * @param y the row of the cell.
+     * @return true if the cell is covered by at least one rectangle.
+     */
+    public boolean isRequired(int x, int y) {
+        return counts[find(pack(x, y))] != 0;
+    }
+
+    /**
+     * Gets the number of cells that are required.
+     * @return the number of cells covered by at least one rectangle.
+     */
+    public int size() {
+        return size;
+    }
+
+    // counts the cells of the area that aren't in the kept area.
+    private void retain(Area area, Area kept, Consumer<GridPos2i> required) {
+
+        for (int x = area.minX; x < area.maxX; x++) {
+            for (int y = area.minY; y < area.maxY; y++) {
+
+                if (kept != null && kept.contains(x, y)) {
+                    continue;
+                }
+
+                if (increment(pack(x, y)) == 1) {
+                    required.accept(new GridPos2i(x, y, bitshift));
+                }
+            }
+        }
+    }
+
+    // stops counting the cells of the area that aren't in the kept area.
+    private void release(Area area, Area kept, Consumer<GridPos2i> unneeded) {
+
+        for (int x = area.minX; x < area.maxX; x++) {
+            for (int y = area.minY; y < area.maxY; y++) {
+
+                if (kept != null && kept.contains(x, y)) {
+                    continue;
+                }
+
+                if (decrement(pack(x, y)) == 0) {
+                    unneeded.accept(new GridPos2i(x, y, bitshift));
+                }
+            }
+        }
+    }
+
+    private static long pack(int x, int y) {
+        return (long) x << 32 | (y & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    // the slot holding the key, or the empty slot it would go in.
+    private int find(long key) {
+
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+
+        while (counts[index] != 0 && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+
+        return index;
+    }
+
+    // adds one to the count of a cell and returns the new count.
+    private int increment(long key) {
+
+        int index = find(key);
+
+        if (counts[index] == 0) {
+
+            // keep the table at most half full so probes stay short.
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                index = find(key);
+            }
+
+            keys[index] = key;
+            size++;
+        }
+
+        return ++counts[index];
+    }
+
+    // takes one from the count of a cell and returns the new count, or -1 if the cell wasn't counted.
+    private int decrement(long key) {
+
+        int index = find(key);
+
+        if (counts[index] == 0) {
+            return -1;
+        }
+
+        int count = --counts[index];
+
+        if (count == 0) {
+            size--;
+            closeGap(index);
+        }
+
+        return count;
+    }
+
+    // moves the entries after an emptied slot back, so a probe never stops at the gap before reaching them.
+    private void closeGap(int gap) {
+
+        int mask = keys.length - 1;
+        int index = (gap + 1) & mask;
+
+        while (counts[index] != 0) {
+
+            int home = hash(keys[index]) & mask;
+
+            // the entry can fill the gap if its home slot is not between the gap and where it is now.
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                keys[gap] = keys[index];
+                counts[gap] = counts[index];
+                counts[index] = 0;
+                gap = index;
+            }
+
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void grow() {
+
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+
+            if (oldCounts[i] != 0) {
+
+                int index = find(oldKeys[i]);
+
+                keys[index] = oldKeys[i];
+                counts[index] = oldCounts[i];
+            }
+        }
+    }
+
+    private static final class Area {
+
+        private final int minX;
+        private final int minY;
+        private final int maxX;
+        private final int maxY;
+
+        private Area(int minX, int minY, int maxX, int maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        private boolean contains(int x, int y) {
+            return x >= minX && x < maxX && y >= minY && y < maxY;
+        }
+    }
+
+}
@@ -7,16 +7,20 @@ import java.util.concurrent.Callable;
 public class CollisionCellLoadTask implements Callable<GreedyCollisionCell> {
 
     private final GridPos2i gridPos;
-    private final SceneCollisionGrid collisionGrid;
+    private final SolidMask mask;
 
-    public CollisionCellLoadTask(GridPos2i gridPos, SceneCollisionGrid collisionGrid) {
+    public CollisionCellLoadTask(GridPos2i gridPos, SolidMask mask) {
         this.gridPos = gridPos;
-        this.collisionGrid = collisionGrid;
+        this.mask = mask;
+    }
+
+    public GridPos2i getGridPosition() {
+        return gridPos;
     }
 
     @Override
     public GreedyCollisionCell call() throws Exception {
-        return new GreedyCollisionCell(gridPos, collisionGrid);
+        return new GreedyCollisionCell(gridPos, mask);
 
     }
 }
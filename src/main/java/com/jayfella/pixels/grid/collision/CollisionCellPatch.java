@@ -0,0 +1,51 @@
+package com.jayfella.pixels.grid.collision;
+
+import com.jayfella.pixels.core.GridPos2i;
+import com.jayfella.pixels.physics.shape.PolygonCollisionShape;
+
+/**
+ * The difference between the shapes a loaded collision cell has and the shapes it needs after its blocks changed.
+ * Shapes are identified by the rectangle of blocks they cover, so a rectangle that didn't change keeps its fixture.
+ *
+ * A patch is created on a worker thread and applied to the cell on the render thread.
+ */
+public class CollisionCellPatch {
+
+    private final GridPos2i gridPos;
+    private final int[] rectangles;
+    private final PolygonCollisionShape[] addedShapes;
+    private final int changeCount;
+
+    CollisionCellPatch(GridPos2i gridPos, int[] rectangles, PolygonCollisionShape[] addedShapes, int changeCount) {
+        this.gridPos = gridPos;
+        this.rectangles = rectangles;
+        this.addedShapes = addedShapes;
+        this.changeCount = changeCount;
+    }
+
+    public GridPos2i getGridPosition() {
+        return gridPos;
+    }
+
+    /**
+     * Gets every rectangle the cell has once the patch is applied. Rectangles the cell has that are not in here are
+     * removed.
+     * @return the packed rectangles in ascending order.
+     */
+    int[] getRectangles() {
+        return rectangles;
+    }
+
+    /**
+     * Gets the shapes that need to be added to the cell, at the same index as the rectangle they cover.
+     * @return the shapes to add, with null for each rectangle that keeps its fixture.
+     */
+    PolygonCollisionShape[] getAddedShapes() {
+        return addedShapes;
+    }
+
+    public boolean isEmpty() {
+        return changeCount == 0;
+    }
+
+}
@@ -1,16 +1,15 @@
 package com.jayfella.pixels.grid.collision;
 
 import com.jayfella.pixels.core.GridPos2i;
+import com.jayfella.pixels.physics.CollisionFilters;
 import com.jayfella.pixels.physics.RigidBodyControl2D;
 import com.jayfella.pixels.physics.shape.PolygonCollisionShape;
-import com.jayfella.pixels.tile.Block;
 import com.jme3.scene.Node;
+import org.dyn4j.dynamics.BodyFixture;
 import org.dyn4j.geometry.MassType;
 import org.dyn4j.geometry.Vector2;
 
-import java.util.HashSet;
-import java.util.Objects;
-import java.util.Set;
+import java.util.Arrays;
 
 public class GreedyCollisionCell {
 
@@ -18,8 +17,14 @@ public class GreedyCollisionCell {
     private final RigidBodyControl2D rigidBodyControl;
     private final GridPos2i gridPos;
 
+    // the packed rectangles of solid blocks in ascending order, and the fixture of each one at the same index.
+    // Both are replaced rather than changed when the cell is patched.
+    private int[] rectangles;
+    private BodyFixture[] fixtures;
+
     // two-dimensional greedy meshing for collision-shapes.
-    public GreedyCollisionCell(GridPos2i gridPos, SceneCollisionGrid collisionGrid) {
+    // only reads the given mask, so the cell can be built on any thread.
+    public GreedyCollisionCell(GridPos2i gridPos, SolidMask mask) {
 
         node = new Node("Collision Cell: " + gridPos);
         this.gridPos = gridPos;
@@ -27,132 +32,142 @@ public class GreedyCollisionCell {
         rigidBodyControl = new RigidBodyControl2D(MassType.INFINITE);
         rigidBodyControl.setPhysicsLocation(gridPos.toWorldTranslation());
 
-        int xWorld = gridPos.getWorldTranslationX();
-        int yWorld = gridPos.getWorldTranslationY();
-
-        int min, max;
-
-        Set<BlockPosition> visitedBlocks = new HashSet<>();
-
-        for (int y = 0; y < collisionGrid.getGridSettings().getCellSize().getSize(); y++) {
-
-            min = -1;
-            max = -1;
-
-            for (int x = 0; x < collisionGrid.getGridSettings().getCellSize().getSize(); x++) {
-
-                int xPosWorld = xWorld + x;
-                int yPosWorld = yWorld + y;
-
-                // try to draw rectangles of blocks that are next to each other instead of individual squares for each block.
+        // each rectangle of solid blocks becomes a single shape.
+        rectangles = decompose(mask);
+        fixtures = new BodyFixture[rectangles.length];
 
-                Block block = collisionGrid.getWorld().getBlock(xPosWorld, yPosWorld);
-
-                if (block == null) {
-                    continue;
-                }
-
-                BlockPosition bp = new BlockPosition(x,y);
-
-                // if block is solid
-                if (block.getType() > 0 ) {
+        for (int i = 0; i < rectangles.length; i++) {
+            fixtures[i] = addShape(createShape(rectangles[i]));
+        }
 
-                    if (!visitedBlocks.contains(bp)) {
+    }
 
-                        // if the minimum has not been set, set it.
-                        if (min < 0) {
-                            min = x;
-                        }
+    private BodyFixture addShape(PolygonCollisionShape shape) {
+        BodyFixture fixture = rigidBodyControl.addCollisionShape(shape);
+        fixture.setFilter(CollisionFilters.TERRAIN);
+        return fixture;
+    }
 
-                        // this solves single-block issues. If min has been set and max has not, there's only a single block.
-                        if (max < 0 || max < x) {
-                            max = x;
-                        }
-                    }
+    private static int packRectangle(int minX, int minY, int maxX, int maxY) {
+        return minX | (minY << 8) | (maxX << 16) | (maxY << 24);
+    }
 
-                }
+    // the packed rectangles of the mask in ascending order.
+    private static int[] decompose(SolidMask mask) {
 
-                // if we hit an air block OR we've reached the end of the chunk, create the row.
-                if (block.getType() < 1 || x == collisionGrid.getGridSettings().getCellSize().getSize() - 1 || visitedBlocks.contains(bp)) {
+        RectangleList list = new RectangleList();
+        mask.decompose(list);
 
-                    // check if a min has been set. if not, there are no blocks in this row.
-                    if (min > -1) {
+        int[] rectangles = Arrays.copyOf(list.rectangles, list.size);
+        Arrays.sort(rectangles);
 
-                        // traverse up the grid row by row until we hit a row that doesn't contain the same amount.
-                        // of solid blocks in our row.
+        return rectangles;
+    }
 
-                        int maxY = y;
+    private static PolygonCollisionShape createShape(int rectangle) {
 
-                        boolean giveUp = false;
-                        while (!giveUp) {
+        int minX = rectangle & 0xFF;
+        int minY = (rectangle >> 8) & 0xFF;
+        int maxX = (rectangle >> 16) & 0xFF;
+        int maxY = (rectangle >>> 24);
 
-                            maxY++;
+        Vector2[] verts = {
+                // bl, br, tr, tl
+                new Vector2(minX, minY),
+                new Vector2(maxX, minY),
+                new Vector2(maxX, maxY),
+                new Vector2(minX, maxY),
+        };
 
-                            if (maxY > collisionGrid.getGridSettings().getCellSize().getSize() - 1) {
-                                giveUp = true;
-                            }
+        return new PolygonCollisionShape(verts);
+    }
 
-                            // iterate horizontally.
-                            for (int r = min; r <= max; r++) {
+    /**
+     * Gets the rectangles this cell currently has a shape for. Must be called from the render thread, but the array
+     * that is returned is never changed, so it can be read from any thread afterwards.
+     * @return the packed rectangles of the cell in ascending order. Must not be modified.
+     */
+    public int[] getRectangles() {
+        return rectangles;
+    }
 
-                                Block n = collisionGrid.getWorld().getBlock(xWorld + r, yWorld + maxY);
+    /**
+     * Works out which shapes need to change for a cell to match its new blocks. Only the shapes of rectangles that
+     * are new are created. Can be called from any thread.
+     * @param gridPos    the grid position of the cell.
+     * @param rectangles the rectangles the cell currently has, from {@link #getRectangles()}.
+     * @param mask       the new blocks of the cell.
+     * @return the changes to apply to the cell.
+     */
+    public static CollisionCellPatch createPatch(GridPos2i gridPos, int[] rectangles, SolidMask mask) {
 
-                                // if the block is not solid or it's already been visited, stop going up.
-                                if (n.getType() < 1 || visitedBlocks.contains(new BlockPosition(r, maxY))) {
-                                    maxY--;
-                                    giveUp = true;
-                                    break;
-                                }
-                            }
+        int[] newRectangles = decompose(mask);
+        PolygonCollisionShape[] addedShapes = new PolygonCollisionShape[newRectangles.length];
 
-                            // if we haven't given up, add this row to the visited blocks.
-                            if (!giveUp) {
-                                for (int r = min; r <= max; r++) {
-                                    visitedBlocks.add(new BlockPosition(r, maxY));
-                                }
-                            }
+        int removed = 0;
+        int added = 0;
 
-                        }
+        // both lists are sorted, so a rectangle that is in both is found by walking them side by side.
+        int oldIndex = 0;
+        int newIndex = 0;
 
-                        // we're done. We should have min/max X and Y to create our polygon.
+        while (oldIndex < rectangles.length || newIndex < newRectangles.length) {
 
-                        // this works but I shouldn't have to do this. I need to investigate why maxY would be +1 the height.
-                        if (maxY == collisionGrid.getGridSettings().getCellSize().getSize()) {
-                            maxY -= 1;
-                        }
+            if (newIndex == newRectangles.length || (oldIndex < rectangles.length && rectangles[oldIndex] < newRectangles[newIndex])) {
+                oldIndex++;
+                removed++;
+            }
+            else if (oldIndex == rectangles.length || newRectangles[newIndex] < rectangles[oldIndex]) {
+                addedShapes[newIndex] = createShape(newRectangles[newIndex]);
+                newIndex++;
+                added++;
+            }
+            else {
+                // the rectangle is still there, so it keeps its fixture.
+                oldIndex++;
+                newIndex++;
+            }
+        }
 
-                        // draw the rectangle.
-                        Vector2[] verts = {
-                                // bl, br, tr, tl
-                                new Vector2(min, y),
-                                new Vector2(max + 1, y),
-                                new Vector2(max + 1, maxY + 1),
-                                new Vector2(min, maxY + 1),
-                        };
+        return new CollisionCellPatch(gridPos, newRectangles, addedShapes, removed + added);
+    }
 
-                        PolygonCollisionShape polygonCollisionShape = new PolygonCollisionShape(verts);
-                        rigidBodyControl.addCollisionShape(polygonCollisionShape);
+    /**
+     * Swaps the fixtures of the rectangles that have changed. The body stays in the physics space, so anything
+     * resting on the parts of the cell that didn't change keeps its contacts. Must be called from the render thread.
+     * @param patch the changes to apply, created from the current rectangles of this cell.
+     */
+    public void applyPatch(CollisionCellPatch patch) {
 
-                        // reset the min/max so we can continue.
-                        min = -1;
-                        max = -1;
+        if (patch.isEmpty()) {
+            return;
+        }
 
-                    }
+        int[] newRectangles = patch.getRectangles();
+        PolygonCollisionShape[] addedShapes = patch.getAddedShapes();
+        BodyFixture[] newFixtures = new BodyFixture[newRectangles.length];
 
-                }
+        int oldIndex = 0;
+        int newIndex = 0;
 
-                // only add solid blocks to our visited list because we already check if it's not solid - which is
-                // cheaper than checking this collection.
-                if (block.getType() > 0 ) {
-                    visitedBlocks.add(bp);
-                }
+        while (oldIndex < rectangles.length || newIndex < newRectangles.length) {
 
+            if (newIndex == newRectangles.length || (oldIndex < rectangles.length && rectangles[oldIndex] < newRectangles[newIndex])) {
+                rigidBodyControl.removeCollisionShape(fixtures[oldIndex++]);
+            }
+            else if (oldIndex == rectangles.length || newRectangles[newIndex] < rectangles[oldIndex]) {
+                newFixtures[newIndex] = addShape(addedShapes[newIndex]);
+                newIndex++;
+            }
+            else {
+                newFixtures[newIndex++] = fixtures[oldIndex++];
             }
         }
 
-        // clean up after ourselves.
-        visitedBlocks.clear();
+        rectangles = newRectangles;
+        fixtures = newFixtures;
 
+        rigidBodyControl.getBody().setMass(MassType.INFINITE);
     }
 
     public GridPos2i getGridPosition() {
@@ -179,27 +194,20 @@ public class GreedyCollisionCell {
 
     }
 
-    private static class BlockPosition {
+    // collects the packed rectangles of a mask without boxing them.
+    private static class RectangleList implements SolidMask.RectangleConsumer {
 
-        private final int x, y;
-
-        public BlockPosition(int x, int y) {
-            this.x = x;
-            this.y = y;
-        }
+        private int[] rectangles = new int[16];
+        private int size;
 
         @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            BlockPosition that = (BlockPosition) o;
-            return x == that.x &&
-                    y == that.y;
-        }
+        public void accept(int minX, int minY, int maxX, int maxY) {
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(x, y);
+            if (size == rectangles.length) {
+                rectangles = Arrays.copyOf(rectangles, size * 2);
+            }
+
+            rectangles[size++] = packRectangle(minX, minY, maxX, maxY);
         }
     }
 
@@ -1,5 +1,6 @@
 package com.jayfella.pixels.grid.collision;
 
+import com.jayfella.pixels.core.FrameBudget;
 import com.jayfella.pixels.core.GridPos2i;
 import com.jayfella.pixels.entity.Entity;
 import com.jayfella.pixels.grid.GridTrackedEntity;
@@ -10,51 +11,70 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SceneCollisionGrid {
 
     private static final Logger log = LoggerFactory.getLogger(SceneCollisionGrid.class);
 
     // we have our own executor here because collisions don't want to be swamped behind any scene generation tasks.
-    // private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Collision Builder");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    // cells that are currently being generated.
-    private final List<Future<CollisionCell>> submittedTasks = new ArrayList<>();
+    // cells that have been built and changes to loaded cells, pushed by the executor.
+    private final Queue<GreedyCollisionCell> completedCells = new ConcurrentLinkedQueue<>();
+    private final Queue<CollisionCellPatch> completedPatches = new ConcurrentLinkedQueue<>();
+
+    // cells that couldn't be built or patched, pushed by the executor so they stop being counted as loading.
+    private final Queue<GridPos2i> failedCells = new ConcurrentLinkedQueue<>();
 
     // cells that are currenty in-scene: loaded and visible to some extent (only the required cells are visible).
     private final Map<GridPos2i, GreedyCollisionCell> loadedCells = new HashMap<>();
 
-    private final List<GridPos2i> requiredCells = new ArrayList<>(); // cells we require to collide everything we need to.
-    private final Deque<GridPos2i> cellRemovals = new ArrayDeque<>(); // cells we need to remove because they are no longer required.
+    // the cells each tracked entity needs, counted so a cell stays loaded while any entity needs it.
+    private final CellDemand cellDemand;
 
-    // temporary frame-by-frame lists
+    private final Deque<GridPos2i> cellRemovals = new ArrayDeque<>(); // cells we need to remove because they are no longer required.
     private final Deque<GridPos2i> cellAdditions = new ArrayDeque<>(); // Cells we need to add.
-    private final List<GridPos2i> unneededCells = new ArrayList<>(); // Cells we need to remove.
 
-    // Cells that are currently being loaded.
+    // loaded cells whose blocks have changed and need to be patched.
+    private final Deque<GridPos2i> cellRefreshes = new ArrayDeque<>();
+
+    // Cells that are currently being loaded or patched.
     private final Set<GridPos2i> loadingCells = new HashSet<>();
 
+    // cells that were removed while they were being loaded, and are thrown away when they arrive.
+    private final Set<GridPos2i> cancelledCells = new HashSet<>();
+
+    // requests that couldn't be started this frame and are tried again next frame.
+    private final List<GridPos2i> deferredAdditions = new ArrayList<>();
+    private final List<GridPos2i> deferredRefreshes = new ArrayList<>();
+
     // keeps track of whether or not we moved grid positions.
     // Set them so they don't match initially so it forces a refresh.
     // private final GridPos2i lastGridPos = new GridPos2i(Integer.MIN_VALUE, Integer.MIN_VALUE, WorldConstants.GRID_BITSHIFT);
     // private final GridPos2i currentGridPos = new GridPos2i(Integer.MAX_VALUE, Integer.MAX_VALUE, WorldConstants.GRID_BITSHIFT);
 
-    // keep a count of how many cells we've added and removed per-frame.
-    private int removalIterations = 0;
-    private int additionIterations = 0;
-
     private final PhysicsSpace physicsSpace;
     private final World world;
     private final GridSettings gridSettings;
 
+    // the time spent adding and removing cells each frame.
+    private final FrameBudget.Slice frameBudget;
+
     private final List<GridTrackedEntity> entities = new ArrayList<>();
 
     public SceneCollisionGrid(World world, PhysicsSpace physicsSpace, GridSettings gridSettings) {
         this.world = world;
         this.physicsSpace = physicsSpace;
         this.gridSettings = gridSettings;
+        this.frameBudget = world.getFrameBudget().createSlice("Collision");
+        this.cellDemand = new CellDemand(gridSettings.getCellSize().getBitshift());
     }
 
     public World getWorld() {
@@ -70,7 +90,18 @@ public class SceneCollisionGrid {
     }
 
     public void removeEntity(Entity entity) {
-        entities.removeIf(e -> e.getEntity() == entity);
+
+        Iterator<GridTrackedEntity> iterator = entities.iterator();
+
+        while (iterator.hasNext()) {
+
+            GridTrackedEntity trackedEntity = iterator.next();
+
+            if (trackedEntity.getEntity() == entity) {
+                cellDemand.removeArea(trackedEntity, cellRemovals::add);
+                iterator.remove();
+            }
+        }
     }
 
     public void updateGrid(float tpf) {
@@ -84,33 +115,14 @@ public class SceneCollisionGrid {
             }
 
             GridPos2i currentGridPos = entity.getCurrentGridPosition();
+            int viewDistance = gridSettings.getViewDistance();
 
-            for (int x = currentGridPos.getX() - gridSettings.getViewDistance(); x < currentGridPos.getX() + gridSettings.getViewDistance(); x++) {
-                for (int y = currentGridPos.getY() - gridSettings.getViewDistance(); y < currentGridPos.getY() + gridSettings.getViewDistance(); y++) {
-                    requiredCells.add(new GridPos2i(x, y, gridSettings.getCellSize().getBitshift()));
-                }
-            }
-
-            // clear the list of current cell additions.
-            // if we got this far, we need an entirely new set of cells than any other previous call.
-            cellAdditions.clear();
-
-            // load cells we do need.
-            // just blanket request all cells in our view distance.
-            // the method that processes this list will not load any cells that already exist.
-            cellAdditions.addAll(requiredCells);
-
-            // if we remove the required cells from the loaded cells, we end up with a list of
-            // cells we don't want anymore.
-            unneededCells.addAll(loadedCells.keySet().stream()
-                    .filter(key -> !requiredCells.contains(key))
-                    .collect(Collectors.toList()));
-
-            cellRemovals.addAll(unneededCells);
-
-            // tidy up after ourselves.
-            requiredCells.clear();
-            unneededCells.clear();
+            // only the cells that entered or left the area of the entity are counted. Cells another entity still
+            // needs are not removed, and cells another entity already needs are not added again.
+            cellDemand.setArea(entity,
+                    currentGridPos.getX() - viewDistance, currentGridPos.getY() - viewDistance,
+                    currentGridPos.getX() + viewDistance, currentGridPos.getY() + viewDistance,
+                    cellAdditions::add, cellRemovals::add);
 
             // set our last position to the set position.
             entity.getLastGridPosition().set(currentGridPos);
@@ -120,88 +132,221 @@ public class SceneCollisionGrid {
     }
 
     private void applyapplyCell(GreedyCollisionCell collisionCell) {
-        world.getWorldNode().attachChild(collisionCell.getCellNode());
-        loadedCells.put(collisionCell.getGridPosition(), collisionCell);
+
         loadingCells.remove(collisionCell.getGridPosition());
 
+        // the cell is no longer required.
+        if (cancelledCells.remove(collisionCell.getGridPosition())) {
+            return;
+        }
+
+        loadedCells.put(collisionCell.getGridPosition(), collisionCell);
+
+        world.getWorldNode().attachChild(collisionCell.getCellNode());
         physicsSpace.add(collisionCell.getRigidBodyControl());
 
         // System.out.println("Attached cell: " + collisionCell.getGridPosition() + " with children: " + collisionCell.getCellNode().getChildren().size());
     }
 
+    /**
+     * Builds a cell on the executor. The blocks of the cell are copied first, so the cell can be built while they
+     * change.
+     * @param gridPos the grid position of the cell.
+     * @return false if the cell can't be built yet because the chunk it is in hasn't been loaded.
+     */
+    private boolean submitCell(GridPos2i gridPos) {
+
+        SolidMask mask = SolidMask.capture(world, gridPos, gridSettings.getCellSize().getSize());
+
+        if (mask == null) {
+            return false;
+        }
+
+        loadingCells.add(gridPos);
+
+        CollisionCellLoadTask collisionCellLoadTask = new CollisionCellLoadTask(gridPos, mask);
+
+        executor.submit(() -> {
+
+            try {
+                completedCells.add(collisionCellLoadTask.call());
+            } catch (Exception e) {
+                log.error("Failed to build collision cell " + gridPos, e);
+                failedCells.add(gridPos);
+            }
+
+        });
+
+        return true;
+    }
+
+    /**
+     * Works out the shapes that changed in a loaded cell on the executor.
+     * @param gridPos the grid position of the cell.
+     * @return false if the cell can't be patched yet because the chunk it is in hasn't been loaded.
+     */
+    private boolean submitPatch(GridPos2i gridPos) {
+
+        SolidMask mask = SolidMask.capture(world, gridPos, gridSettings.getCellSize().getSize());
+
+        if (mask == null) {
+            return false;
+        }
+
+        loadingCells.add(gridPos);
+
+        int[] rectangles = loadedCells.get(gridPos).getRectangles();
+
+        executor.submit(() -> {
+
+            try {
+                completedPatches.add(GreedyCollisionCell.createPatch(gridPos, rectangles, mask));
+            } catch (Exception e) {
+                log.error("Failed to patch collision cell " + gridPos, e);
+                failedCells.add(gridPos);
+            }
+
+        });
+
+        return true;
+    }
+
+    private void applyPatch(CollisionCellPatch patch) {
+
+        loadingCells.remove(patch.getGridPosition());
+
+        GreedyCollisionCell cell = loadedCells.get(patch.getGridPosition());
+
+        // the cell was removed while the patch was being made.
+        if (cancelledCells.remove(patch.getGridPosition()) || cell == null) {
+            return;
+        }
+
+        cell.applyPatch(patch);
+    }
+
     public void update(float tpf) {
 
         updateGrid(tpf);
 
-        GridPos2i cellRemoval = cellRemovals.poll();
+        frameBudget.begin(gridSettings.getFrameBudget());
+
+        // keep a count of how many cells we've added and removed this frame.
+        int removalIterations = 0;
+        int additionIterations = 0;
 
-        while (cellRemoval != null) {
+        while (frameBudget.hasTime() && !cellRemovals.isEmpty()) {
 
-            GreedyCollisionCell cell = loadedCells.get(cellRemoval);
+            GridPos2i cellRemoval = cellRemovals.poll();
+
+            // an entity has needed the cell again since it was queued.
+            if (cellDemand.isRequired(cellRemoval)) {
+                continue;
+            }
+
+            GreedyCollisionCell cell = loadedCells.remove(cellRemoval);
 
             if (cell != null) {
-                loadedCells.remove(cellRemoval);
                 cell.destroy();
 
                 // only iterate if we've actually removed a cell.
                 removalIterations++;
             }
 
-            // if we've removed the maximum amount this frame, wait until the next frame.
-            if (removalIterations % gridSettings.getRemovalsPerFrame() == 0) {
-                cellRemoval = null;
+            // the cell will be thrown away when it has been built.
+            if (loadingCells.contains(cellRemoval)) {
+                cancelledCells.add(cellRemoval);
             }
-
         }
 
         if (log.isDebugEnabled() && removalIterations > 0) {
             log.debug("Collision Cells Removed This Frame: " + removalIterations);
         }
 
-        // reset the removal count.
-        removalIterations = 0;
+        // a cell that failed is no longer loading. A failed cell is built again the next time it is needed, and a cell
+        // that failed to be patched keeps its old shapes until its blocks change again.
+        GridPos2i failedCell;
 
-        GridPos2i cellAddition = cellAdditions.poll();
+        while ((failedCell = failedCells.poll()) != null) {
+            loadingCells.remove(failedCell);
+            cancelledCells.remove(failedCell);
+        }
+
+        // attach the cells that have been built. Only adding them to the physics space happens here.
+        GreedyCollisionCell completedCell;
+
+        while (frameBudget.hasTime() && (completedCell = completedCells.poll()) != null) {
+            applyapplyCell(completedCell);
+            additionIterations++;
+        }
 
-        while (cellAddition != null) {
+        // swap the fixtures of cells that have changed.
+        CollisionCellPatch completedPatch;
 
-            // if this position is loading or already loaded, ignore the cell load request.
-            if (loadingCells.contains(cellAddition) || loadedCells.containsKey(cellAddition)) {
-                cellAddition = cellAdditions.poll();
+        while (frameBudget.hasTime() && (completedPatch = completedPatches.poll()) != null) {
+            applyPatch(completedPatch);
+        }
+
+        if (log.isDebugEnabled() && additionIterations > 0) {
+            log.debug("Collision Cells Added This Frame: " + additionIterations);
+        }
+
+        while (frameBudget.hasTime() && !cellAdditions.isEmpty()) {
+
+            GridPos2i cellAddition = cellAdditions.poll();
+
+            // every entity that needed the cell has moved away since it was queued.
+            if (!cellDemand.isRequired(cellAddition)) {
                 continue;
             }
 
-            loadingCells.add(cellAddition);
+            // the cell was removed while it was loading. Wait for it to arrive and be thrown away, then load it again.
+            if (loadingCells.contains(cellAddition)) {
 
-            CollisionCellLoadTask collisionCellLoadTask = new CollisionCellLoadTask(cellAddition, this);
+                if (cancelledCells.contains(cellAddition)) {
+                    deferredAdditions.add(cellAddition);
+                }
 
-            try {
-                GreedyCollisionCell cell = collisionCellLoadTask.call();
-                applyapplyCell(cell);
-            }catch (Exception e) {
-                e.printStackTrace();;
+                continue;
             }
 
-            // submittedTasks.add(executor.submit(collisionCellLoadTask));
+            // if this position is already loaded, ignore the cell load request.
+            if (loadedCells.containsKey(cellAddition)) {
+                continue;
+            }
 
-            additionIterations++;
+            if (!submitCell(cellAddition)) {
+                deferredAdditions.add(cellAddition);
+            }
+        }
+
+        while (frameBudget.hasTime() && !cellRefreshes.isEmpty()) {
+
+            GridPos2i cellRefresh = cellRefreshes.poll();
+
+            // wait for the cell or patch that is being made, because it may have been made before the blocks changed.
+            if (loadingCells.contains(cellRefresh)) {
+                deferredRefreshes.add(cellRefresh);
+                continue;
+            }
 
-            // if we've added the maximum amount this frame, wait until the next frame.
-            if (additionIterations % gridSettings.getAdditionsPerFrame() == 0) {
-                cellAddition = null;
+            // the cell has been removed since the refresh was requested.
+            if (!loadedCells.containsKey(cellRefresh)) {
+                continue;
             }
-            else {
-                cellAddition = cellAdditions.poll();
+
+            if (!submitPatch(cellRefresh)) {
+                deferredRefreshes.add(cellRefresh);
             }
         }
 
-        if (log.isDebugEnabled() && additionIterations > 0) {
-            log.debug("Collision Cells Added This Frame: " + additionIterations);
-        }
+        cellAdditions.addAll(deferredAdditions);
+        cellRefreshes.addAll(deferredRefreshes);
 
-        // reset the addition count.
-        additionIterations = 0;
+        deferredAdditions.clear();
+        deferredRefreshes.clear();
 
+        frameBudget.end();
     }
 
     /**
@@ -210,9 +355,8 @@ public class SceneCollisionGrid {
      */
     public void refreshLoadedCell(GridPos2i gridPos) {
 
-        if (loadedCells.containsKey(gridPos)) {
-            cellRemovals.add(gridPos);
-            cellAdditions.add(gridPos);
+        if (loadedCells.containsKey(gridPos) || loadingCells.contains(gridPos)) {
+            cellRefreshes.add(gridPos);
         }
 
     }
@@ -226,7 +370,7 @@ public class SceneCollisionGrid {
     }
 
     public void destroy() {
-        // executor.shutdown();
+        executor.shutdownNow();
     }
 
 }
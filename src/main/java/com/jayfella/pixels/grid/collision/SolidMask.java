@@ -0,0 +1,161 @@
+package com.jayfella.pixels.grid.collision;
+
+import com.jayfella.pixels.core.GridPos2i;
+import com.jayfella.pixels.core.WorldConstants;
+import com.jayfella.pixels.world.Chunk;
+import com.jayfella.pixels.world.World;
+
+/**
+ * A copy of which blocks of a collision cell are solid, one row per long. Bit x of row y is set if the block at x, y
+ * of the cell is solid.
+ *
+ * The mask is taken on the render thread and never changes afterwards, so it can be read by any thread while the
+ * blocks it was taken from keep changing.
+ */
+public final class SolidMask {
+
+    public static final int MAX_SIZE = Long.SIZE;
+
+    private final int size;
+    private final long[] rows;
+
+    SolidMask(int size, long[] rows) {
+        this.size = size;
+        this.rows = rows;
+    }
+
+    /**
+     * Copies the solid blocks of a collision cell. Must be called from the render thread.
+     * @param world   the world the cell is in.
+     * @param gridPos the grid position of the cell.
+     * @param size    the width and height of the cell, at most 64.
+     * @return the mask of the cell, or null if a chunk the cell covers is not loaded.
+     */
+    public static SolidMask capture(World world, GridPos2i gridPos, int size) {
+
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Cell size must not be larger than " + MAX_SIZE + ": " + size);
+        }
+
+        int xWorld = gridPos.getWorldTranslationX();
+        int yWorld = gridPos.getWorldTranslationY();
+
+        long[] rows = new long[size];
+        Chunk chunk = null;
+
+        for (int x = 0; x < size; x++) {
+
+            int xPos = xWorld + x;
+
+            // a cell can cover more than one chunk if it's wider than a chunk or isn't aligned to one.
+            if (chunk == null || chunk.getGridPosition() != xPos >> WorldConstants.GRID_BITSHIFT) {
+
+                chunk = world.getChunk(xPos >> WorldConstants.GRID_BITSHIFT);
+
+                if (chunk == null) {
+                    return null;
+                }
+            }
+
+            int xLocal = xPos & (WorldConstants.CELL_SIZE - 1);
+
+            for (int y = 0; y < size; y++) {
+
+                int yPos = yWorld + y;
+
+                // anything below or above the world is air.
+                if (yPos < 0 || yPos >= WorldConstants.MAX_HEIGHT) {
+                    continue;
+                }
+
+                if (chunk.getType(xLocal, yPos) > 0) {
+                    rows[y] |= 1L << x;
+                }
+            }
+        }
+
+        return new SolidMask(size, rows);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets a row of the mask.
+     * @param y a value between 0 and size - 1
+     * @return the row, where bit x is set if the block at x is solid.
+     */
+    public long getRow(int y) {
+        return rows[y];
+    }
+
+    /**
+     * Gets whether or not a block in the cell is solid. Coordinates outside of the cell are never solid.
+     * @param x the x coordinate in the cell.
+     * @param y the y coordinate in the cell.
+     * @return true if the block is solid.
+     */
+    public boolean isSolid(int x, int y) {
+
+        if (x < 0 || y < 0 || x >= size || y >= size) {
+            return false;
+        }
+
+        return (rows[y] & (1L << x)) != 0;
+    }
+
+    /**
+     * Splits the solid blocks of the mask into rectangles. Each row is scanned for runs of solid blocks, and each run
+     * is grown upwards for as long as the rows above have the same run, so every solid block ends up in exactly one
+     * rectangle. Runs and rows are found with bit operations, so nothing is allocated apart from a copy of the rows.
+     *
+     * This is a single greedy pass, so the rectangles are not maximal and not the fewest possible. A run stops growing
+     * at the first row above that doesn't contain all of it, even if a narrower rectangle could have gone higher, and
+     * blocks beside a rectangle on the rows above its first row are left for rectangles of their own.
+     * @param consumer receives each rectangle, in blocks relative to the cell. The maximums are exclusive.
+     */
+    public void decompose(RectangleConsumer consumer) {
+
+        // the blocks that haven't been put in a rectangle yet.
+        long[] remaining = rows.clone();
+
+        for (int y = 0; y < size; y++) {
+
+            while (remaining[y] != 0) {
+
+                int minX = Long.numberOfTrailingZeros(remaining[y]);
+
+                // the length of the run of set bits starting at minX.
+                long inverted = ~(remaining[y] >>> minX);
+                int width = inverted == 0 ? Long.SIZE - minX : Long.numberOfTrailingZeros(inverted);
+
+                long run = (width == Long.SIZE ? -1L : (1L << width) - 1) << minX;
+
+                remaining[y] &= ~run;
+
+                int maxY = y + 1;
+
+                while (maxY < size && (remaining[maxY] & run) == run) {
+                    remaining[maxY] &= ~run;
+                    maxY++;
+                }
+
+                consumer.accept(minX, y, minX + width, maxY);
+            }
+        }
+    }
+
+    public interface RectangleConsumer {
+
+        /**
+         * Accepts a rectangle of solid blocks.
+         * @param minX the first column of the rectangle.
+         * @param minY the first row of the rectangle.
+         * @param maxX the column after the last column of the rectangle.
+         * @param maxY the row after the last row of the rectangle.
+         */
+        void accept(int minX, int minY, int maxX, int maxY);
+    }
+
+}
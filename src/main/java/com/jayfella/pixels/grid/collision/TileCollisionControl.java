@@ -0,0 +1,142 @@
+package com.jayfella.pixels.grid.collision;
+
+import com.jayfella.pixels.core.WorldConstants;
+import com.jayfella.pixels.physics.PhysicsSpace;
+import com.jayfella.pixels.physics.PhysicsTickListener;
+import com.jayfella.pixels.physics.RigidBodyControl2D;
+import com.jayfella.pixels.world.Chunk;
+import com.jayfella.pixels.world.World;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.control.AbstractControl;
+import org.dyn4j.dynamics.Body;
+import org.dyn4j.geometry.Transform;
+import org.dyn4j.geometry.Vector2;
+
+/**
+ * Collides the body of a {@link RigidBodyControl2D} with the blocks of the world directly, without any terrain bodies.
+ *
+ * The body is treated as an axis-aligned box. The physics space moves the body as usual, and after each step the
+ * movement is replayed with a {@link TileSweep}. If a solid block is hit the box stops against it and its velocity on
+ * that axis is cleared. Blocks in chunks that are not loaded are solid, so nothing falls through terrain that hasn't
+ * loaded yet. A body inside a chunk that hasn't loaded is held where it is until the chunk loads, and a body that is
+ * left overlapping blocks when it does can still move out of them.
+ *
+ * This control only listens for physics ticks. It never adds or removes the body, which belongs to the rigid body
+ * control. Add it to the same spatial as the rigid body control and give it the physics space to start colliding.
+ * Blocks are read on the physics thread, so the physics space must be updated on the render thread.
+ */
+public class TileCollisionControl extends AbstractControl implements PhysicsTickListener {
+
+    private final World world;
+    private final RigidBodyControl2D rigidBodyControl;
+    private final TileSweep sweep;
+
+    private PhysicsSpace physicsSpace;
+
+    private double startX;
+    private double startY;
+
+    /**
+     * Creates a new tile collision control.
+     * @param world            the world to collide with.
+     * @param rigidBodyControl the rigid body control of the body to collide.
+     * @param width            the width of the box of the body, centered on its location.
+     * @param height           the height of the box of the body, centered on its location.
+     */
+    public TileCollisionControl(World world, RigidBodyControl2D rigidBodyControl, float width, float height) {
+        this.world = world;
+        this.rigidBodyControl = rigidBodyControl;
+        this.sweep = new TileSweep(this::isSolid, width, height);
+    }
+
+    /**
+     * Gets whether or not the body was standing on a solid block after the last physics step.
+     * @return true if the body landed on or is resting on a solid block.
+     */
+    public boolean isGrounded() {
+        return sweep.isGrounded();
+    }
+
+    /**
+     * Sets the physics space whose steps this control collides the body after.
+     * @param space the physics space, or null to stop colliding.
+     */
+    public void setPhysicsSpace(PhysicsSpace space) {
+
+        if (physicsSpace != null) {
+            physicsSpace.removePhysicsTickListener(this);
+        }
+
+        physicsSpace = space;
+
+        if (physicsSpace != null) {
+            physicsSpace.addPhysicsTickListener(this);
+        }
+    }
+
+    public PhysicsSpace getPhysicsSpace() {
+        return physicsSpace;
+    }
+
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float tpf) {
+        Transform transform = rigidBodyControl.getBody().getTransform();
+        startX = transform.getTranslationX();
+        startY = transform.getTranslationY();
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float tpf) {
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        Body body = rigidBodyControl.getBody();
+        Transform transform = body.getTransform();
+
+        sweep.move(startX, startY, transform.getTranslationX(), transform.getTranslationY());
+
+        Vector2 velocity = body.getLinearVelocity();
+
+        if (sweep.isBlockedX()) {
+            velocity.x = 0;
+        }
+
+        if (sweep.isBlockedY()) {
+            velocity.y = 0;
+        }
+
+        transform.setTranslation(sweep.getX(), sweep.getY());
+    }
+
+    private boolean isSolid(int x, int y) {
+
+        // the bottom of the world is solid, the sky is not.
+        if (y < 0) {
+            return true;
+        }
+
+        if (y >= WorldConstants.MAX_HEIGHT) {
+            return false;
+        }
+
+        Chunk chunk = world.getChunk(x >> WorldConstants.GRID_BITSHIFT);
+
+        if (chunk == null) {
+            return true;
+        }
+
+        return chunk.getType(x & (WorldConstants.CELL_SIZE - 1), y) > 0;
+    }
+
+    @Override
+    protected void controlUpdate(float tpf) {
+    }
+
+    @Override
+    protected void controlRender(RenderManager rm, ViewPort vp) {
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.jayfella.pixels.grid.collision;
+
+/**
+ * Moves an axis-aligned box through a grid of blocks one axis at a time, stopping it against the first solid block
+ * its leading edge passes through. Blocks are one unit wide, so block x, y covers x to x + 1 and y to y + 1.
+ *
+ * The box is moved along x first and then along y from where the x movement ended. Every column or row between the
+ * start and the end is checked, so a fast box can't pass through a thin wall. Only the blocks the box moves into are
+ * checked, so a box that starts inside solid blocks is free to move out of them, but is still stopped by any solid block
+ * it moves into.
+ *
+ * This class is not thread-safe. The result of the last move is kept until the next move.
+ */
+public class TileSweep {
+
+    // keeps a box that is touching a block from counting as overlapping it.
+    private static final double EPSILON = 1e-6;
+
+    private final SolidBlocks blocks;
+
+    private final double halfWidth;
+    private final double halfHeight;
+
+    private double x;
+    private double y;
+
+    private boolean blockedX;
+    private boolean blockedY;
+    private boolean grounded;
+
+    /**
+     * Creates a new sweep.
+     * @param blocks the blocks to collide with.
+     * @param width  the width of the box, centered on its location.
+     * @param height the height of the box, centered on its location.
+     */
+    public TileSweep(SolidBlocks blocks, double width, double height) {
+        this.blocks = blocks;
+        this.halfWidth = width * 0.5;
+        this.halfHeight = height * 0.5;
+    }
+
+    /**
+     * Moves the box from a start location towards an end location.
+     * @param startX the x location the box starts at. Solid blocks the box overlaps here don't stop it.
+     * @param startY the y location the box starts at.
+     * @param endX   the x location the box is moving to.
+     * @param endY   the y location the box is moving to.
+     */
+    public void move(double startX, double startY, double endX, double endY) {
+
+        blockedX = false;
+        blockedY = false;
+
+        x = sweepX(startX, startY, endX);
+        y = sweepY(x, startY, endY);
+
+        // landing on a block, or resting on one without moving.
+        if (blockedY) {
+            grounded = endY < startY;
+        }
+        else {
+            grounded = isRowSolid(x, y - halfHeight - EPSILON);
+        }
+    }
+
+    /**
+     * Gets the x location the box stopped at in the last move.
+     * @return the end x location, or the x location of the block it stopped against.
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the y location the box stopped at in the last move.
+     * @return the end y location, or the y location of the block it stopped against.
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Gets whether or not the box hit a solid block while moving along x in the last move.
+     * @return true if the box was stopped before it reached the end x location.
+     */
+    public boolean isBlockedX() {
+        return blockedX;
+    }
+
+    /**
+     * Gets whether or not the box hit a solid block while moving along y in the last move.
+     * @return true if the box was stopped before it reached the end y location.
+     */
+    public boolean isBlockedY() {
+        return blockedY;
+    }
+
+    /**
+     * Gets whether or not the box was standing on a solid block after the last move.
+     * @return true if the box landed on or is resting on a solid block.
+     */
+    public boolean isGrounded() {
+        return grounded;
+    }
+
+    private double sweepX(double x, double y, double endX) {
+
+        int minRow = floor(y - halfHeight + EPSILON);
+        int maxRow = floor(y + halfHeight - EPSILON);
+
+        if (endX > x) {
+
+            for (int column = floor(x + halfWidth - EPSILON) + 1; column <= floor(endX + halfWidth - EPSILON); column++) {
+                if (isSolid(column, minRow, maxRow, true)) {
+                    blockedX = true;
+                    return column - halfWidth;
+                }
+            }
+        }
+        else if (endX < x) {
+
+            for (int column = floor(x - halfWidth + EPSILON) - 1; column >= floor(endX - halfWidth + EPSILON); column--) {
+                if (isSolid(column, minRow, maxRow, true)) {
+                    blockedX = true;
+                    return column + 1 + halfWidth;
+                }
+            }
+        }
+
+        return endX;
+    }
+
+    private double sweepY(double x, double y, double endY) {
+
+        int minColumn = floor(x - halfWidth + EPSILON);
+        int maxColumn = floor(x + halfWidth - EPSILON);
+
+        if (endY > y) {
+
+            for (int row = floor(y + halfHeight - EPSILON) + 1; row <= floor(endY + halfHeight - EPSILON); row++) {
+                if (isSolid(row, minColumn, maxColumn, false)) {
+                    blockedY = true;
+                    return row - halfHeight;
+                }
+            }
+        }
+        else if (endY < y) {
+
+            for (int row = floor(y - halfHeight + EPSILON) - 1; row >= floor(endY - halfHeight + EPSILON); row--) {
+                if (isSolid(row, minColumn, maxColumn, false)) {
+                    blockedY = true;
+                    return row + 1 + halfHeight;
+                }
+            }
+        }
+
+        return endY;
+    }
+
+    private boolean isRowSolid(double x, double y) {
+        return isSolid(floor(y), floor(x - halfWidth + EPSILON), floor(x + halfWidth - EPSILON), false);
+    }
+
+    /**
+     * Checks a line of blocks.
+     * @param line     the column or row to check.
+     * @param min      the first block of the line.
+     * @param max      the last block of the line.
+     * @param vertical true if the line is a column, false if it's a row.
+     * @return true if any block on the line is solid.
+     */
+    private boolean isSolid(int line, int min, int max, boolean vertical) {
+
+        for (int i = min; i <= max; i++) {
+
+            boolean solid = vertical ? blocks.isSolid(line, i) : blocks.isSolid(i, line);
+
+            if (solid) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int floor(double value) {
+        return (int) Math.floor(value);
+    }
+
+    public interface SolidBlocks {
+
+        /**
+         * Gets whether or not a block stops the box.
+         * @param x the x coordinate of the block.
+         * @param y the y coordinate of the block.
+         * @return true if the block is solid.
+         */
+        boolean isSolid(int x, int y);
+    }
+
+}
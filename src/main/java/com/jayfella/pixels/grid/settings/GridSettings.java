@@ -16,8 +16,7 @@ public class GridSettings {
 
     private int viewDistance = 5;
     private CellSize cellSize = CellSize.Size_16;
-    private int additionsPerFrame = 1;
-    private int removalsPerFrame = 1;
+    private float frameBudget = 0.1f;
 
     /**
      * Gets how many grid cells are drawn from the center in each cardinal direction.
@@ -70,39 +69,22 @@ public class GridSettings {
     }
 
     /**
-     * How many cells will be added to the scene per-frame.
-     * @return the amount of cells that will be added per-frame.
+     * The fraction of each frame that is spent adding cells to and removing cells from the scene.
+     * @return the fraction of the frame spent adding and removing cells.
      */
-    public int getAdditionsPerFrame() {
-        return additionsPerFrame;
+    public float getFrameBudget() {
+        return frameBudget;
     }
 
     /**
-     * Determines how many cells will be added to the scene per frame.
-     * Adding too many cells per-frame may cause "stutter" because there is so much data being pushed to the
-     * graphics card in such a short amount of time.
-     * @param additionsPerFrame the amount of cells to add per frame.
+     * Determines how much of each frame is spent adding cells to and removing cells from the scene. The fraction is of
+     * the target frame time, and shrinks when the frames take longer than that.
+     * Spending too much of the frame may cause "stutter" because there is so much data being pushed to the graphics card
+     * or so much garbage being created in such a short amount of time.
+     * @param frameBudget the fraction of the frame to spend, between 0 and 1.
      */
-    public void setAdditionsPerFrame(int additionsPerFrame) {
-        this.additionsPerFrame = additionsPerFrame;
-    }
-
-    /**
-     * How many cells will be removed from the scene per-frame.
-     * @return the amount of cells to remove per-frame.
-     */
-    public int getRemovalsPerFrame() {
-        return removalsPerFrame;
-    }
-
-    /**
-     * Determines how many cells will be removed from the scene per frame.
-     * Removing too many cells per-frame may cause "stutter" because there is too much garbage being collected in such
-     * a short amount of time.
-     * @param removalsPerFrame the amount of cells to remove per-frame.
-     */
-    public void setRemovalsPerFrame(int removalsPerFrame) {
-        this.removalsPerFrame = removalsPerFrame;
+    public void setFrameBudget(float frameBudget) {
+        this.frameBudget = frameBudget;
     }
 
     public List<GridSettingsListener> getListeners() {
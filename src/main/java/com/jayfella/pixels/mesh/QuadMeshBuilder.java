@@ -0,0 +1,146 @@
+package com.jayfella.pixels.mesh;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Builds a mesh of axis-aligned quads directly into the direct buffers of a mesh, usually obtained from a
+ * {@link QuadMeshPool}. Each quad has a position, a texture coordinate and a block data attribute (TexCoord2) for each
+ * of its four vertices. The buffers must be large enough to hold every quad, which avoids building intermediate lists
+ * of boxed vectors.
+ *
+ * Every vertex of a quad gets the texture coordinate of the corner of its tile in the sprite sheet, and the material
+ * repeats the tile once per block. A quad can therefore cover any number of blocks that use the same tile.
+ *
+ * The index buffer is not written. Every quad uses the same 0,1,2,0,2,3 pattern, so the mesh is expected to share a
+ * pre-built index buffer that covers its whole capacity, and any quads that are not used are collapsed to a single
+ * point so they don't draw anything.
+ */
+public class QuadMeshBuilder {
+
+    // indices are stored as shorts, so we can't address more vertices than this.
+    public static final int MAX_QUADS = 0xFFFF / 4;
+
+    // the index pattern of a single quad: bl, br, tr, bl, tr, tl
+    private static final short[] QUAD_INDICES = { 0, 1, 2, 0, 2, 3 };
+
+    private final Mesh mesh;
+    private final int quadCapacity;
+
+    private final FloatBuffer positions;
+    private final FloatBuffer texCoords;
+    private final FloatBuffer blockData;
+
+    private int quadCount = 0;
+
+    /**
+     * Creates a builder that writes into the buffers of the given mesh, replacing any existing contents.
+     * @param mesh a mesh with Position, TexCoord and TexCoord2 float buffers and a shared quad index buffer.
+     */
+    public QuadMeshBuilder(Mesh mesh) {
+        this.mesh = mesh;
+
+        positions = mesh.getFloatBuffer(VertexBuffer.Type.Position);
+        texCoords = mesh.getFloatBuffer(VertexBuffer.Type.TexCoord);
+        blockData = mesh.getFloatBuffer(VertexBuffer.Type.TexCoord2);
+
+        quadCapacity = positions.capacity() / (4 * 3);
+
+        positions.clear();
+        texCoords.clear();
+        blockData.clear();
+    }
+
+    /**
+     * Creates a buffer that contains the indices of the given amount of quads.
+     * @param quadCount the amount of quads.
+     * @return a buffer that contains the indices of the given amount of quads.
+     */
+    public static ShortBuffer createQuadIndices(int quadCount) {
+
+        if (quadCount > MAX_QUADS) {
+            throw new IllegalArgumentException("Quad count exceeds the maximum of " + MAX_QUADS + ": " + quadCount);
+        }
+
+        ShortBuffer indices = BufferUtils.createShortBuffer(quadCount * QUAD_INDICES.length);
+
+        for (int quad = 0; quad < quadCount; quad++) {
+            for (short index : QUAD_INDICES) {
+                indices.put((short) (quad * 4 + index));
+            }
+        }
+
+        indices.flip();
+
+        return indices;
+    }
+
+    /**
+     * Adds a quad with its bottom-left corner at the given position.
+     * @param x      the x position of the bottom-left corner.
+     * @param y      the y position of the bottom-left corner.
+     * @param width  the width of the quad in blocks.
+     * @param height the height of the quad in blocks.
+     * @param u      the u texture coordinate of the bottom-left corner of the tile.
+     * @param v      the v texture coordinate of the bottom-left corner of the tile.
+     * @param dataX  the x component of the block data.
+     * @param dataY  the y component of the block data.
+     * @param dataZ  the z component of the block data.
+     */
+    public void addQuad(float x, float y, float width, float height, float u, float v, float dataX, float dataY, float dataZ) {
+
+        if (quadCount == quadCapacity) {
+            throw new IllegalStateException("Quad capacity exceeded: " + quadCapacity);
+        }
+
+        // bl, br, tr, tl
+        positions.put(x).put(y).put(0)
+                .put(x + width).put(y).put(0)
+                .put(x + width).put(y + height).put(0)
+                .put(x).put(y + height).put(0);
+
+        for (int i = 0; i < 4; i++) {
+            texCoords.put(u).put(v);
+            blockData.put(dataX).put(dataY).put(dataZ);
+        }
+
+        quadCount++;
+    }
+
+    public int getQuadCount() {
+        return quadCount;
+    }
+
+    /**
+     * Finishes the mesh with the quads that have been added.
+     * @return the mesh containing the quads that have been added.
+     */
+    public Mesh build() {
+
+        // the shared index buffer draws every quad the mesh can hold, so collapse the unused quads into a single
+        // point. Zero-area triangles are discarded before they are rasterized.
+        while (positions.hasRemaining()) {
+            positions.put(0);
+        }
+
+        // the buffers always cover the full capacity of the mesh, so their size never changes and re-uploading
+        // them only updates the existing buffer on the GPU.
+        positions.clear();
+        texCoords.clear();
+        blockData.clear();
+
+        mesh.getBuffer(VertexBuffer.Type.Position).updateData(positions);
+        mesh.getBuffer(VertexBuffer.Type.TexCoord).updateData(texCoords);
+        mesh.getBuffer(VertexBuffer.Type.TexCoord2).updateData(blockData);
+
+        mesh.updateCounts();
+        mesh.updateBound();
+
+        return mesh;
+    }
+
+}
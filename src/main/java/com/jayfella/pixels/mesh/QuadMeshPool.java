@@ -0,0 +1,150 @@
+package com.jayfella.pixels.mesh;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of quad meshes, grouped into capacity classes of power-of-two quad counts.
+ * Meshes are pooled along with their vertex buffers, so re-using a mesh re-uses both its direct buffers and the
+ * buffer objects on the GPU instead of leaving them for the garbage collector and the native memory cleaner.
+ *
+ * Every mesh in a capacity class shares the same index buffer, built once from a single index buffer that covers the
+ * largest capacity class, so each mesh only uploads its positions, texture coordinates and block data.
+ *
+ * This class is thread-safe.
+ */
+public class QuadMeshPool {
+
+    private final int maxQuads;
+    private final int maxPooledPerClass;
+
+    private final Deque<Mesh>[] pools;
+    private final VertexBuffer[] sharedIndexBuffers;
+
+    /**
+     * Creates a new pool.
+     * @param maxQuads          the largest amount of quads a mesh will be requested for.
+     * @param maxPooledPerClass the maximum amount of meshes to keep in each capacity class.
+     */
+    @SuppressWarnings("unchecked")
+    public QuadMeshPool(int maxQuads, int maxPooledPerClass) {
+
+        if (maxQuads > QuadMeshBuilder.MAX_QUADS) {
+            throw new IllegalArgumentException("Quad count exceeds the maximum of " + QuadMeshBuilder.MAX_QUADS + ": " + maxQuads);
+        }
+
+        this.maxQuads = maxQuads;
+        this.maxPooledPerClass = maxPooledPerClass;
+
+        pools = new Deque[getCapacityClass(maxQuads) + 1];
+
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ArrayDeque<>();
+        }
+
+        // jME draws as many indices as the index buffer holds, so each capacity class needs its own vertex buffer.
+        // They are all views of the same indices, though, because the pattern of the first quads is always the same.
+        ShortBuffer indices = QuadMeshBuilder.createQuadIndices(1 << (pools.length - 1));
+        sharedIndexBuffers = new VertexBuffer[pools.length];
+
+        for (int i = 0; i < pools.length; i++) {
+
+            ShortBuffer classIndices = indices.duplicate();
+            classIndices.limit((1 << i) * 6);
+
+            VertexBuffer indexBuffer = new VertexBuffer(VertexBuffer.Type.Index);
+            indexBuffer.setupData(VertexBuffer.Usage.Static, 3, VertexBuffer.Format.UnsignedShort, classIndices);
+
+            sharedIndexBuffers[i] = indexBuffer;
+        }
+    }
+
+    /**
+     * Gets the capacity class that can hold the given amount of quads.
+     * Class 0 holds a single quad, class 1 holds 2 quads, class 2 holds 4 quads, and so on.
+     * @param quadCount the amount of quads. Must be greater than zero.
+     * @return the capacity class of the given amount of quads.
+     */
+    public static int getCapacityClass(int quadCount) {
+        return 32 - Integer.numberOfLeadingZeros(quadCount - 1);
+    }
+
+    /**
+     * Gets a mesh from the pool that is able to hold at least the given amount of quads, or creates one if the pool
+     * is empty. The contents of the buffers are undefined.
+     * @param quadCount the amount of quads the mesh must hold.
+     * @return a mesh that can hold at least the given amount of quads.
+     */
+    public Mesh acquire(int quadCount) {
+
+        if (quadCount < 1 || quadCount > maxQuads) {
+            throw new IllegalArgumentException("Quad count must be between 1 and " + maxQuads + ": " + quadCount);
+        }
+
+        int capacityClass = getCapacityClass(quadCount);
+
+        Mesh mesh;
+
+        synchronized (pools) {
+            mesh = pools[capacityClass].poll();
+        }
+
+        if (mesh == null) {
+            mesh = createMesh(capacityClass);
+        }
+
+        return mesh;
+    }
+
+    /**
+     * Returns a mesh to the pool. The mesh must no longer be used by any geometry.
+     * Meshes that were not created by this pool are ignored.
+     * @param mesh the mesh to return to the pool.
+     */
+    public void release(Mesh mesh) {
+
+        FloatBuffer positions = mesh.getFloatBuffer(VertexBuffer.Type.Position);
+
+        if (positions == null) {
+            return;
+        }
+
+        int quadCapacity = positions.capacity() / (4 * 3);
+
+        // only accept meshes that are exactly the size of a capacity class.
+        if (quadCapacity < 1 || quadCapacity > maxQuads || Integer.bitCount(quadCapacity) != 1) {
+            return;
+        }
+
+        Deque<Mesh> pool = pools[getCapacityClass(quadCapacity)];
+
+        synchronized (pools) {
+            if (pool.size() < maxPooledPerClass && !pool.contains(mesh)) {
+                pool.push(mesh);
+            }
+        }
+    }
+
+    private Mesh createMesh(int capacityClass) {
+
+        int quadCapacity = 1 << capacityClass;
+
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(VertexBuffer.Type.Position, 3, BufferUtils.createFloatBuffer(quadCapacity * 4 * 3));
+        mesh.setBuffer(VertexBuffer.Type.TexCoord, 2, BufferUtils.createFloatBuffer(quadCapacity * 4 * 2));
+        mesh.setBuffer(VertexBuffer.Type.TexCoord2, 3, BufferUtils.createFloatBuffer(quadCapacity * 4 * 3));
+        mesh.setBuffer(sharedIndexBuffers[capacityClass]);
+
+        // light is sampled from a texture, so the vertex data of a mesh never changes once it has been built.
+        mesh.setStatic();
+
+        return mesh;
+    }
+
+}
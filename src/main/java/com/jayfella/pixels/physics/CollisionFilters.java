@@ -0,0 +1,30 @@
+package com.jayfella.pixels.physics;
+
+import org.dyn4j.collision.CategoryFilter;
+import org.dyn4j.collision.Filter;
+
+/**
+ * The filters that decide which fixtures are allowed to collide. Fixtures without a filter collide with everything.
+ */
+public final class CollisionFilters {
+
+    public static final long TERRAIN_CATEGORY = 1L;
+    public static final long PLAYER_CATEGORY = 1L << 1;
+
+    private static final long ALL_CATEGORIES = Long.MAX_VALUE;
+
+    /**
+     * The filter of the fixtures of collision cells.
+     */
+    public static final Filter TERRAIN = new CategoryFilter(TERRAIN_CATEGORY, ALL_CATEGORIES);
+
+    /**
+     * The filter of the player. The player collides with the blocks directly, so it ignores the collision cells that
+     * are built for other bodies.
+     */
+    public static final Filter PLAYER = new CategoryFilter(PLAYER_CATEGORY, ALL_CATEGORIES & ~TERRAIN_CATEGORY);
+
+    private CollisionFilters() {
+    }
+
+}
@@ -249,7 +249,7 @@ public class PhysicsSpace {
     }
 
     public void removePhysicsCollisionListener(PhysicsCollisionListener collisionListener) {
-        this.collisionListeners.add(collisionListener);
+        this.collisionListeners.remove(collisionListener);
     }
 
     public void addPhysicsTickListener(PhysicsTickListener tickListener) {
@@ -257,7 +257,7 @@ public class PhysicsSpace {
     }
 
     public void removePhysicsTickListener(PhysicsTickListener tickListener) {
-        this.tickListeners.add(tickListener);
+        this.tickListeners.remove(tickListener);
     }
 
     protected void fireCollisionListenerEvent(Body body1, BodyFixture fixture1, Body body2, BodyFixture fixture2, Vector3f collisionPoint) {
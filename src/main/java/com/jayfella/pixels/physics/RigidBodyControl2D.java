@@ -97,6 +97,24 @@ public class RigidBodyControl2D extends AbstractControl implements PhysicsContro
         return bodyFixture;
     }
 
+    /**
+     * Removes a collision shape from the rigid body without touching its other shapes.
+     *
+     * @param bodyFixture the fixture returned when the shape was added.
+     * @return true if the fixture belonged to the rigid body.
+     */
+    public boolean removeCollisionShape(BodyFixture bodyFixture) {
+
+        boolean removed = this.body.removeFixture(bodyFixture);
+
+        // the broadphase keeps its own reference to each fixture. New fixtures are picked up on the next step.
+        if (removed && physicsSpace != null) {
+            physicsSpace.getPhysicsWorld().getBroadphaseDetector().remove(this.body, bodyFixture);
+        }
+
+        return removed;
+    }
+
     public void setCollisionShape(CollisionShape collisionShape) {
 //        this.collisionShape = collisionShape;
 //        this.body.removeFixture(bodyFixture);
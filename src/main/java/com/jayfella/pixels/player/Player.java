@@ -3,6 +3,7 @@ package com.jayfella.pixels.player;
 import com.jayfella.pixels.entity.Entity;
 import com.jayfella.pixels.item.Inventory;
 import com.jayfella.pixels.mesh.CenteredQuad;
+import com.jayfella.pixels.physics.CollisionFilters;
 import com.jayfella.pixels.physics.RigidBodyControl2D;
 import com.jayfella.pixels.physics.shape.BoxCollisionShape;
 import com.jayfella.pixels.world.World;
@@ -18,6 +19,9 @@ import org.dyn4j.geometry.MassType;
 
 public class Player implements Entity {
 
+    public static final float WIDTH = 1.1f;
+    public static final float HEIGHT = 1.8f;
+
     private final Geometry geometry;
     private final RigidBodyControl2D rigidBodyControl2D;
     private float zoom = 30.0f;
@@ -28,16 +32,17 @@ public class Player implements Entity {
 
     public Player(AssetManager assetManager, Vector3f startLocation) {
 
-        Mesh mesh = new CenteredQuad(1.1f, 1.8f);
+        Mesh mesh = new CenteredQuad(WIDTH, HEIGHT);
         geometry = new Geometry("Player", mesh);
 
         Material material = new Material(assetManager, Materials.UNSHADED);
         geometry.setMaterial(material);
 
-        BoxCollisionShape boxCollisionShape = new BoxCollisionShape(1.1f, 1.8f);
+        BoxCollisionShape boxCollisionShape = new BoxCollisionShape(WIDTH, HEIGHT);
         rigidBodyControl2D = new RigidBodyControl2D(boxCollisionShape, MassType.FIXED_ANGULAR_VELOCITY);
         rigidBodyControl2D.setAngularVelocity(0);
         rigidBodyControl2D.setDensity(600);
+        rigidBodyControl2D.setFilter(CollisionFilters.PLAYER);
 
         geometry.addControl(rigidBodyControl2D);
         setLocation(startLocation);
@@ -1,42 +1,40 @@
 package com.jayfella.pixels.tile;
 
 import com.jayfella.pixels.core.WorldConstants;
+import com.jayfella.pixels.tile.light.LightManager;
 import com.jayfella.pixels.world.Chunk;
 import com.jayfella.pixels.world.ChunkCell;
 
-import java.util.Objects;
-
+/**
+ * A lightweight view of a single block in a {@link ChunkCell}.
+ * The block data itself lives in the packed arrays of the cell, so instances are cheap to create and should be
+ * treated as transient cursors rather than stored.
+ */
 public class Block {
 
     private final ChunkCell chunkCell;
-    private int type;
-    private byte configuration;
     private final int x, y;
 
-    private int lightValue;
-
-    public Block(ChunkCell chunkCell, int type, byte configuration, int x, int y) {
+    public Block(ChunkCell chunkCell, int x, int y) {
         this.chunkCell = chunkCell;
-        this.type = type;
-        this.configuration = configuration;
         this.x = x;
         this.y = y;
     }
 
     public int getType() {
-        return type;
+        return chunkCell.getType(x, y);
     }
 
     public void setType(int type) {
-        this.type = type;
+        chunkCell.setType(x, y, type);
     }
 
     public byte getConfiguration() {
-        return configuration;
+        return chunkCell.getConfiguration(x, y);
     }
 
     public void setConfiguration(byte configuration) {
-        this.configuration = configuration;
+        chunkCell.setConfiguration(x, y, configuration);
     }
 
     public ChunkCell getChunkCell() {
@@ -56,53 +54,54 @@ public class Block {
         return cellWorld + y;
     }
 
+    private int getLightValue() {
+        return chunkCell.getLight(x, y);
+    }
+
+    // light changes are queued for the LightEngine, so the getters return the new value once it has been processed.
+    private void setLightValue(int channel, int val) {
+        chunkCell.getChunk().setLightChannel(x, getWorldY(), channel, val);
+    }
+
     public int getSunlight() {
-        return (lightValue >> 4) & 0xF;
+        return LightManager.getChannel(getLightValue(), LightManager.CHANNEL_SUN);
     }
 
     public void setSunlight(int val) {
-        lightValue = (lightValue & 0xF) | (val << 4);
+        setLightValue(LightManager.CHANNEL_SUN, val);
     }
 
+    // torchlight is white light, so it is the same in every color channel.
     public int getTorchlight() {
-        return lightValue & 0xF;
+        return Math.max(getRedLight(), Math.max(getGreenLight(), getBlueLight()));
     }
 
     public void setTorchlight(int val) {
-        lightValue = (lightValue & 0xF0) | val;
+        chunkCell.getChunk().setTorchlight(x, getWorldY(), val);
     }
 
     public int getRedLight() {
-
-        return (lightValue >> 8) & 0xF;
-
+        return LightManager.getChannel(getLightValue(), LightManager.CHANNEL_RED);
     }
 
     public void setRedLight(int val) {
-
-        lightValue = (lightValue & 0xF0FF) | (val << 8);
+        setLightValue(LightManager.CHANNEL_RED, val);
     }
 
-    public int getGreenLight(int x, int y, int z) {
-
-        return (lightValue >> 4) & 0xF;
-
+    public int getGreenLight() {
+        return LightManager.getChannel(getLightValue(), LightManager.CHANNEL_GREEN);
     }
 
-    public void setGreenLight(int x, int y, int z, int val) {
-
-        lightValue = (lightValue & 0xFF0F) | (val << 4);
+    public void setGreenLight(int val) {
+        setLightValue(LightManager.CHANNEL_GREEN, val);
     }
 
-    public int getBlueLight(int x, int y, int z) {
-
-        return lightValue & 0xF;
-
+    public int getBlueLight() {
+        return LightManager.getChannel(getLightValue(), LightManager.CHANNEL_BLUE);
     }
 
-    public void setBlueLight(int x, int y, int z, int val) {
-
-        lightValue = (lightValue & 0xFFF0) | (val);
+    public void setBlueLight(int val) {
+        setLightValue(LightManager.CHANNEL_BLUE, val);
     }
 
     public Block getNeighbor(BlockFace blockFace) {
@@ -204,6 +203,9 @@ public class Block {
 
 
 
+    // Blocks are views, so two blocks are equal if they point at the same position in the same cell.
+    // The type, configuration and light are NOT part of the identity because they are mutable.
+
     @Override
     public boolean equals(Object o) {
 
@@ -212,21 +214,19 @@ public class Block {
 
         Block block = (Block) o;
 
-        return type == block.type &&
-                chunkCell.getCellIndex() == block.chunkCell.getCellIndex() &&
+        return chunkCell.getCellIndex() == block.chunkCell.getCellIndex() &&
                 chunkCell.getChunk().getGridPosition() == block.chunkCell.getChunk().getGridPosition() &&
-                configuration == block.configuration &&
                 x == block.x &&
                 y == block.y;
     }
 
-    // DO NOT hash the light value!
-    // If the hashCode() value of an object has changed since it was added to the HashSet, it seems to render the object unremovable.
-    // https://stackoverflow.com/a/256247
-
     @Override
     public int hashCode() {
-        return Objects.hash(type, configuration, chunkCell.getCellIndex(), chunkCell.getChunk().getGridPosition(), x, y);
+        int result = chunkCell.getChunk().getGridPosition();
+        result = 31 * result + chunkCell.getCellIndex();
+        result = 31 * result + x;
+        result = 31 * result + y;
+        return result;
     }
 
 }
@@ -1,8 +1,133 @@
 package com.jayfella.pixels.tile.light;
 
+import com.jayfella.pixels.core.WorldConstants;
+import com.jme3.renderer.Renderer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.texture.image.ColorSpace;
+import com.jme3.util.BufferUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Holds the light texture of a chunk and defines how light is packed.
+ *
+ * Light is packed into 16 bits, 4 bits per channel: bits 12-15 = sun, 8-11 = red, 4-7 = green, 0-3 = blue.
+ * Each channel spreads independently, so a block is lit by the brightest of each.
+ *
+ * The light texture is one texel per block, CELL_SIZE wide and MAX_HEIGHT high, so it covers the whole chunk.
+ * The red, green and blue channels of the texture are the colored light of the block, and alpha is its sunlight.
+ * The shader samples it using the position of the fragment in the chunk, so light never needs to be written into
+ * the mesh of a cell.
+ *
+ * Changes are tracked as a dirty region and only that region is uploaded. The texture is a single cell wide, so the
+ * region is always a run of whole rows, which is contiguous in the texture data and can be uploaded without copying.
+ */
 public class LightManager {
 
+    public static final int CHANNEL_BLUE = 0;
+    public static final int CHANNEL_GREEN = 1;
+    public static final int CHANNEL_RED = 2;
+    public static final int CHANNEL_SUN = 3;
+
+    public static final int CHANNEL_COUNT = 4;
+
+    public static final int MAX_LIGHT = 15;
+
+    private static final int TEXEL_SIZE = 4;
+
+    private final ByteBuffer data;
+    private final Texture2D texture;
+
+    // the dirty region, in rows. minDirtyRow > maxDirtyRow when nothing has changed.
+    private int minDirtyRow = Integer.MAX_VALUE;
+    private int maxDirtyRow = Integer.MIN_VALUE;
+
+    public LightManager() {
+
+        data = BufferUtils.createByteBuffer(WorldConstants.CELL_SIZE * WorldConstants.MAX_HEIGHT * TEXEL_SIZE);
+
+        Image image = new Image(Image.Format.RGBA8, WorldConstants.CELL_SIZE, WorldConstants.MAX_HEIGHT, data, ColorSpace.Linear);
+
+        texture = new Texture2D(image);
+        texture.setMagFilter(Texture.MagFilter.Nearest);
+        texture.setMinFilter(Texture.MinFilter.NearestNoMipMaps);
+        texture.setWrap(Texture.WrapMode.EdgeClamp);
+    }
+
+    /**
+     * Gets the value of a single channel from a packed light value.
+     * @param light   the packed light value.
+     * @param channel the channel, one of the CHANNEL constants.
+     * @return the light value of the channel, between 0 and 15.
+     */
+    public static int getChannel(int light, int channel) {
+        return (light >> (channel << 2)) & 0xF;
+    }
+
+    /**
+     * Sets the value of a single channel of a packed light value.
+     * @param light   the packed light value.
+     * @param channel the channel, one of the CHANNEL constants.
+     * @param val     the light value of the channel, between 0 and 15.
+     * @return the new packed light value.
+     */
+    public static int setChannel(int light, int channel, int val) {
+        int shift = channel << 2;
+        return (light & ~(0xF << shift)) | (val << shift);
+    }
+
+    public Texture2D getTexture() {
+        return texture;
+    }
+
+    /**
+     * Writes the light value of a block into the light texture. The texture is uploaded the next time
+     * {@link #flush(Renderer)} is called.
+     * @param x     a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y     a value between 0 and WorldConstants.MAX_HEIGHT - 1
+     * @param light the packed light value.
+     */
+    public void setLight(int x, int y, int light) {
+
+        int index = (x + y * WorldConstants.CELL_SIZE) * TEXEL_SIZE;
+
+        // scale 0-15 up to 0-255.
+        data.put(index, (byte) (getChannel(light, CHANNEL_RED) * 17));
+        data.put(index + 1, (byte) (getChannel(light, CHANNEL_GREEN) * 17));
+        data.put(index + 2, (byte) (getChannel(light, CHANNEL_BLUE) * 17));
+        data.put(index + 3, (byte) (getChannel(light, CHANNEL_SUN) * 17));
+
+        minDirtyRow = Math.min(minDirtyRow, y);
+        maxDirtyRow = Math.max(maxDirtyRow, y);
+    }
+
+    /**
+     * Uploads the region of the light texture that has changed since the last call. Must be called from the render
+     * thread.
+     * @param renderer the renderer to upload the texture with.
+     */
+    public void flush(Renderer renderer) {
+
+        if (minDirtyRow > maxDirtyRow) {
+            return;
+        }
+
+        int rowSize = WorldConstants.CELL_SIZE * TEXEL_SIZE;
+
+        ByteBuffer rows = data.duplicate();
+        rows.position(minDirtyRow * rowSize);
+        rows.limit((maxDirtyRow + 1) * rowSize);
+
+        Image region = new Image(Image.Format.RGBA8, WorldConstants.CELL_SIZE, maxDirtyRow - minDirtyRow + 1,
+                rows.slice(), ColorSpace.Linear);
 
+        // if the texture hasn't been uploaded yet this uploads the whole texture first.
+        renderer.modifyTexture(texture, region, 0, minDirtyRow);
 
+        minDirtyRow = Integer.MAX_VALUE;
+        maxDirtyRow = Integer.MIN_VALUE;
+    }
 
 }
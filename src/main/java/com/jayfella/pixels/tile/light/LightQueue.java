@@ -0,0 +1,106 @@
+package com.jayfella.pixels.tile.light;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A first-in-first-out queue of light nodes, stored as packed ints in a growable ring buffer.
+ * A node holds the local x and y coordinates of a block in its chunk, a light value and the light channel it
+ * belongs to (see {@link LightManager}).
+ *
+ * Packed layout: bits 0-3 = x, bits 4-11 = y, bits 12-15 = light, bits 16-17 = channel.
+ *
+ * This class is not thread-safe.
+ */
+public class LightQueue {
+
+    private int[] nodes;
+    private int head;
+    private int size;
+
+    /**
+     * Creates a new queue.
+     * @param initialCapacity the initial capacity of the queue. Must be a power of two.
+     */
+    public LightQueue(int initialCapacity) {
+
+        if (Integer.bitCount(initialCapacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + initialCapacity);
+        }
+
+        nodes = new int[initialCapacity];
+    }
+
+    public static int pack(int x, int y, int light, int channel) {
+        return (channel << 16) | (light << 12) | (y << 4) | x;
+    }
+
+    public static int getX(int node) {
+        return node & 0xF;
+    }
+
+    public static int getY(int node) {
+        return (node >> 4) & 0xFF;
+    }
+
+    public static int getLight(int node) {
+        return (node >> 12) & 0xF;
+    }
+
+    public static int getChannel(int node) {
+        return (node >> 16) & 0x3;
+    }
+
+    public void push(int x, int y, int light, int channel) {
+        push(pack(x, y, light, channel));
+    }
+
+    public void push(int node) {
+
+        if (size == nodes.length) {
+            grow();
+        }
+
+        nodes[(head + size) & (nodes.length - 1)] = node;
+        size++;
+    }
+
+    public int poll() {
+
+        if (size == 0) {
+            throw new NoSuchElementException("The queue is empty.");
+        }
+
+        int node = nodes[head];
+        head = (head + 1) & (nodes.length - 1);
+        size--;
+
+        return node;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+
+        int[] grown = new int[nodes.length << 1];
+
+        // unwrap the ring so the head is at the start of the new array.
+        int headLength = nodes.length - head;
+        System.arraycopy(nodes, head, grown, 0, headLength);
+        System.arraycopy(nodes, 0, grown, headLength, head);
+
+        nodes = grown;
+        head = 0;
+    }
+
+}
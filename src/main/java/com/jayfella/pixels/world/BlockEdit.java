@@ -0,0 +1,132 @@
+package com.jayfella.pixels.world;
+
+import com.jayfella.pixels.core.GridPos2i;
+import com.jayfella.pixels.core.WorldConstants;
+import com.jayfella.pixels.grid.SceneGrid;
+import com.jayfella.pixels.grid.collision.SceneCollisionGrid;
+import com.jme3.math.Vector2f;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A batch of block changes.
+ *
+ * Blocks are changed straight away, but the meshes and collision cells they affect are only collected. When the edit
+ * is committed each affected cell is rebuilt once, no matter how many of its blocks were changed, so an explosion or a
+ * brush stroke costs the same amount of rebuilds as changing a single block in every cell it touches.
+ *
+ * An edit is created with {@link World#beginEdit()} and must be used and committed from the render thread.
+ */
+public class BlockEdit {
+
+    private final SceneGrid sceneGrid;
+    private final MeshScheduler meshScheduler;
+    private final SceneCollisionGrid collisionGrid;
+
+    private final Set<ChunkCell> dirtyCells = new LinkedHashSet<>();
+    private final Set<GridPos2i> dirtyCollisionCells = new LinkedHashSet<>();
+
+    private boolean committed;
+
+    BlockEdit(SceneGrid sceneGrid, MeshScheduler meshScheduler, SceneCollisionGrid collisionGrid) {
+        this.sceneGrid = sceneGrid;
+        this.meshScheduler = meshScheduler;
+        this.collisionGrid = collisionGrid;
+    }
+
+    public BlockEdit addBlock(int type, Vector2f worldLocation) {
+
+        Chunk chunk = getChunk(worldLocation);
+
+        if (chunk != null) {
+            chunk.addBlock(getLocalX(worldLocation), (int)worldLocation.y, type);
+            markDirty(chunk, worldLocation);
+        }
+
+        return this;
+    }
+
+    public BlockEdit deleteBlock(Vector2f worldLocation) {
+
+        Chunk chunk = getChunk(worldLocation);
+
+        if (chunk != null) {
+            chunk.removeBlock(getLocalX(worldLocation), (int)worldLocation.y);
+            markDirty(chunk, worldLocation);
+        }
+
+        return this;
+    }
+
+    /**
+     * Rebuilds every mesh and collision cell that was affected by this edit. An edit can only be committed once.
+     */
+    public void commit() {
+
+        if (committed) {
+            throw new IllegalStateException("This edit has already been committed.");
+        }
+
+        committed = true;
+
+        for (ChunkCell cell : dirtyCells) {
+            meshScheduler.requestMesh(cell);
+        }
+
+        for (GridPos2i gridPos : dirtyCollisionCells) {
+            collisionGrid.refreshLoadedCell(gridPos);
+        }
+
+        dirtyCells.clear();
+        dirtyCollisionCells.clear();
+    }
+
+    private Chunk getChunk(Vector2f worldLocation) {
+
+        if (committed) {
+            throw new IllegalStateException("This edit has already been committed.");
+        }
+
+        // blocks in chunks that are not loaded can't be changed.
+        return sceneGrid.getChunk((int)worldLocation.x >> WorldConstants.GRID_BITSHIFT);
+    }
+
+    private int getLocalX(Vector2f worldLocation) {
+        return (int)worldLocation.x & (WorldConstants.CELL_SIZE - 1);
+    }
+
+    private void markDirty(Chunk chunk, Vector2f worldLocation) {
+
+        int localX = getLocalX(worldLocation);
+        int localY = (int)worldLocation.y & (WorldConstants.CELL_SIZE - 1);
+        int cellIndex = (int)worldLocation.y >> WorldConstants.GRID_BITSHIFT;
+
+        // a block on the edge of a cell is also drawn by the neighboring cells, so they need to be rebuilt too.
+        int minX = localX == 0 ? -1 : 0;
+        int maxX = localX == WorldConstants.CELL_SIZE - 1 ? 1 : 0;
+        int minY = localY == 0 ? -1 : 0;
+        int maxY = localY == WorldConstants.CELL_SIZE - 1 ? 1 : 0;
+
+        for (int x = minX; x <= maxX; x++) {
+
+            Chunk neighbor = x == 0 ? chunk : sceneGrid.getChunk(chunk.getGridPosition() + x);
+
+            if (neighbor == null) {
+                continue;
+            }
+
+            for (int y = minY; y <= maxY; y++) {
+
+                int neighborCellIndex = cellIndex + y;
+
+                if (neighborCellIndex >= 0 && neighborCellIndex < WorldConstants.CELL_COUNT_Y) {
+                    dirtyCells.add(neighbor.getCell(neighborCellIndex));
+                }
+            }
+        }
+
+        dirtyCollisionCells.add(GridPos2i.fromWorldLocation(worldLocation, collisionGrid.getGridSettings().getCellSize().getBitshift()));
+    }
+
+}
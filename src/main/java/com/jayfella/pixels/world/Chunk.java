@@ -4,11 +4,14 @@ import com.jayfella.pixels.core.WorldConstants;
 import com.jayfella.pixels.tile.BlobTile;
 import com.jayfella.pixels.tile.Block;
 import com.jayfella.pixels.tile.BlockFace;
-import com.jme3.scene.Geometry;
+import com.jayfella.pixels.tile.light.LightManager;
+import com.jayfella.pixels.tile.light.LightQueue;
+import com.jme3.material.MatParamOverride;
+import com.jme3.renderer.Renderer;
 import com.jme3.scene.Node;
+import com.jme3.shader.VarType;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
 public class Chunk {
 
@@ -21,12 +24,42 @@ public class Chunk {
     // we can probably use a byte array here since our max height is 256;
     private final int[] heightmap;
 
-    // private final Deque<LightNode> lightBfsQueue = new ArrayDeque<>();
-    private final Set<Block> lightBfsQueue = new HashSet<>(); //Sets.newConcurrentHashSet();
-    private final Set<Block> lightRemovalBfsQueue = new HashSet<>();
+    private static final int LIGHT_ROW_WORDS = WorldConstants.MAX_HEIGHT / Long.SIZE;
+
+    // the light map is double-buffered and packed as described in LightManager. The LightEngine propagates light into the back buffer on its own thread, and
+    // the render thread copies the rows that changed into the front buffer while the engine is idle.
+    // Both are indexed by x + y * CELL_SIZE.
+    private final short[] light = new short[WorldConstants.CELL_SIZE * WorldConstants.MAX_HEIGHT];
+    private final short[] backLight = new short[WorldConstants.CELL_SIZE * WorldConstants.MAX_HEIGHT];
+    private final long[] dirtyLightRows = new long[LIGHT_ROW_WORDS];
+
+    // blocks that need to spread their light, and blocks whose light has been removed.
+    // Only the LightEngine uses these, and only while it owns the back buffer.
+    private final LightQueue lightAdditions = new LightQueue(1024);
+    private final LightQueue lightRemovals = new LightQueue(256);
+
+    // which blocks are solid, one bit per block, indexed like the light map. Light spreads through this copy instead
+    // of the blocks so the LightEngine never reads blocks that are being edited. Cells whose blocks changed are copied
+    // again by the render thread while the engine is idle.
+    private final long[] lightSolidity = new long[WorldConstants.CELL_SIZE * WorldConstants.MAX_HEIGHT / Long.SIZE];
+    private int changedSolidityCells;
+
+    // light changes made on the render thread, handed to the LightEngine in the order they were made when it is idle.
+    // Each node is tagged with what it does, above the bits used by LightQueue.
+    private static final int PENDING_SET = 0;
+    private static final int PENDING_REMOVE = 1 << 18;
+    private static final int PENDING_SPREAD = 2 << 18;
+    private static final int PENDING_OPERATION_MASK = 3 << 18;
+
+    private final LightQueue pendingLight = new LightQueue(256);
+
+    // the light texture of the chunk, sampled by every cell in the chunk.
+    private final LightManager lightManager = new LightManager();
 
     private final Node chunkNode;
 
+    private boolean destroyed;
+
     public Chunk(int gridPosition, World world) {
         gridPos = gridPosition;
         this.world = world;
@@ -38,6 +71,7 @@ public class Chunk {
 
         chunkNode = new Node("Chunk: " + gridPos);
         chunkNode.setLocalTranslation(gridPosition << WorldConstants.GRID_BITSHIFT, 0, 0);
+        chunkNode.addMatParamOverride(new MatParamOverride(VarType.Texture2D, "LightMap", lightManager.getTexture()));
         generate();
     }
 
@@ -55,26 +89,20 @@ public class Chunk {
 
     public void generate() {
 
-        // generate each chunk cell.
-        for (int y = 0; y < WorldConstants.CELL_COUNT_Y; y++) {
-            cells[y] = new ChunkCell(this, y);
-        }
-
-        // generate the heightmap from the cells.
-        // iterate down each column, setting the light value to FULL until we hit the heightmap value.
-        chunkGenerator.initHeightMap(this);
+        // sample the noise once for the whole column, then generate each chunk cell from it.
+        DensityGrid densityGrid = chunkGenerator.sampleDensity(this);
 
         for (int y = 0; y < WorldConstants.CELL_COUNT_Y; y++) {
+            cells[y] = new ChunkCell(this, y, densityGrid);
+        }
 
-            ChunkCell chunkCell = cells[y];
-
-            Geometry geometry = chunkGenerator.generateGeometry(chunkCell);
+        // generate the heightmap from the cells, then light the chunk.
+        // The meshes are built separately by the MeshScheduler once the chunk is loaded.
+        markSolidityChanged(-1);
+        updateLightSolidity();
 
-            if (geometry != null) {
-                chunkCell.setGeometry(geometry);
-                chunkNode.attachChild(geometry);
-            }
-        }
+        chunkGenerator.initHeightMap(this);
+        chunkGenerator.initLightMap(this);
     }
 
     public World getWorld() {
@@ -121,37 +149,400 @@ public class Chunk {
         return cells[cellIndex].getBlockLocal(x, y);
     }
 
+    private static int lightIndex(int x, int y) {
+        return x + (y << WorldConstants.GRID_BITSHIFT);
+    }
+
     /**
-     * Sets the sunlight value of the block matching the given coordinates.
+     * Gets the packed light value of the block at the given coordinates from the front buffer.
      * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
      * @param y a value between 0 and WorldConstants.MAX_HEIGHT - 1
+     * @return the packed light value.
      */
-    public void setSunlight(int x, int y, int val) {
-        int cellIndex = y >> WorldConstants.GRID_BITSHIFT;
-        int localY = y - (cellIndex << WorldConstants.GRID_BITSHIFT);
+    public int getLight(int x, int y) {
+        return light[lightIndex(x, y)] & 0xFFFF;
+    }
 
-        Block block = cells[cellIndex].getBlockLocal(x, localY);
-        block.setSunlight(val);
+    /**
+     * Queues every channel of the packed light value of the block at the given coordinates to be set and spread.
+     * {@link #getLight(int, int)} returns the new value once the LightEngine has processed it.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.MAX_HEIGHT - 1
+     */
+    public void setLight(int x, int y, int value) {
+        for (int channel = 0; channel < LightManager.CHANNEL_COUNT; channel++) {
+            pendingLight.push(LightQueue.pack(x, y, LightManager.getChannel(value, channel), channel) | PENDING_SET);
+        }
+    }
+
+    /**
+     * Queues a single light channel of the block at the given coordinates to be set and spread.
+     * @param x       a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y       a value between 0 and WorldConstants.MAX_HEIGHT - 1
+     * @param channel one of the LightManager channels.
+     * @param val     the light value between 0 and 15.
+     */
+    public void setLightChannel(int x, int y, int channel, int val) {
+        pendingLight.push(LightQueue.pack(x, y, val, channel) | PENDING_SET);
+    }
+
+    /**
+     * Queues the sunlight value of the block matching the given coordinates to be set and spread.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.MAX_HEIGHT - 1
+     */
+    public void setSunlight(int x, int y, int val) {
+        setLightChannel(x, y, LightManager.CHANNEL_SUN, val);
+    }
 
-        lightBfsQueue.add(block);
+    /**
+     * Queues a colored light source at the given coordinates to be set and spread.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.MAX_HEIGHT - 1
+     */
+    public void setBlockLight(int x, int y, int red, int green, int blue) {
+        setLightChannel(x, y, LightManager.CHANNEL_RED, red);
+        setLightChannel(x, y, LightManager.CHANNEL_GREEN, green);
+        setLightChannel(x, y, LightManager.CHANNEL_BLUE, blue);
     }
 
     public void setTorchlight(int x, int y, int val) {
+        setBlockLight(x, y, val, val, val);
+    }
+
+    /**
+     * Queues the sunlight of the block matching the given coordinates to be removed from it and the blocks it lit.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.MAX_HEIGHT - 1
+     */
+    public void removeSunlight(int x, int y) {
+        pendingLight.push(LightQueue.pack(x, y, 0, LightManager.CHANNEL_SUN) | PENDING_REMOVE);
+    }
+
+    /**
+     * Queues every light channel of the block matching the given coordinates to be removed from it and the blocks it
+     * lit, including any light source at the coordinates.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.MAX_HEIGHT - 1
+     */
+    public void removeLight(int x, int y) {
+        for (int channel = 0; channel < LightManager.CHANNEL_COUNT; channel++) {
+            pendingLight.push(LightQueue.pack(x, y, 0, channel) | PENDING_REMOVE);
+        }
+    }
+
+    // queues the blocks surrounding the given coordinates to spread their light into it.
+    private void queueNeighborLight(int x, int y) {
+
+        if (x > 0) {
+            queueLightSpread(x - 1, y);
+        }
+        else {
+            Chunk chunk = world.getChunk(gridPos - 1);
+
+            if (chunk != null) {
+                chunk.queueLightSpread(WorldConstants.CELL_SIZE - 1, y);
+            }
+        }
+
+        if (x < WorldConstants.CELL_SIZE - 1) {
+            queueLightSpread(x + 1, y);
+        }
+        else {
+            Chunk chunk = world.getChunk(gridPos + 1);
+
+            if (chunk != null) {
+                chunk.queueLightSpread(0, y);
+            }
+        }
+
+        if (y > 0) {
+            queueLightSpread(x, y - 1);
+        }
+
+        if (y < WorldConstants.MAX_HEIGHT - 1) {
+            queueLightSpread(x, y + 1);
+        }
+    }
+
+    // queues every channel of the block to spread.
+    private void queueLightSpread(int x, int y) {
+        for (int channel = 0; channel < LightManager.CHANNEL_COUNT; channel++) {
+            pendingLight.push(LightQueue.pack(x, y, 0, channel) | PENDING_SPREAD);
+        }
+    }
+
+    // the back buffer is owned by the LightEngine. These are only called by the engine, or while it is idle.
+
+    int getBackLight(int x, int y, int channel) {
+        return LightManager.getChannel(backLight[lightIndex(x, y)], channel);
+    }
+
+    void setBackLight(int x, int y, int channel, int val) {
+        int index = lightIndex(x, y);
+        backLight[index] = (short) LightManager.setChannel(backLight[index], channel, val);
+        dirtyLightRows[y >> 6] |= 1L << y;
+    }
+
+    /**
+     * Sets the sunlight of every block in the given rows of the back buffer without queueing them to spread.
+     * Any colored light in the rows is cleared.
+     * @param minY the lowest row, inclusive.
+     * @param maxY the highest row, exclusive.
+     * @param val  the sunlight value between 0 and 15.
+     */
+    void fillBackSunlight(int minY, int maxY, int val) {
+
+        short value = (short) LightManager.setChannel(0, LightManager.CHANNEL_SUN, val);
+        Arrays.fill(backLight, lightIndex(0, minY), lightIndex(0, maxY), value);
+
+        for (int y = minY; y < maxY; y++) {
+            dirtyLightRows[y >> 6] |= 1L << y;
+        }
+    }
+
+    void fillBackColumnSunlight(int x, int minY, int maxY, int val) {
+
+        for (int y = minY; y < maxY; y++) {
+            setBackLight(x, y, LightManager.CHANNEL_SUN, val);
+        }
+    }
+
+    /**
+     * Copies the whole back buffer into the front buffer and the light texture.
+     * Only used while the chunk is generated, before the chunk is handed to the render thread and the LightEngine.
+     */
+    void publishLight() {
+
+        System.arraycopy(backLight, 0, light, 0, light.length);
+        Arrays.fill(dirtyLightRows, 0);
+
+        for (int y = 0; y < WorldConstants.MAX_HEIGHT; y++) {
+            for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
+                lightManager.setLight(x, y, light[lightIndex(x, y)]);
+            }
+        }
+    }
+
+    /**
+     * Queues the lit blocks along the left and right edges of this chunk, and the edges of the loaded chunks beside it,
+     * to spread their light across the border. Called when the chunk is loaded.
+     */
+    public void queueBorderLight() {
+
+        queueEdgeLight(0);
+        queueEdgeLight(WorldConstants.CELL_SIZE - 1);
+
+        Chunk left = world.getChunk(gridPos - 1);
+
+        if (left != null) {
+            left.queueEdgeLight(WorldConstants.CELL_SIZE - 1);
+        }
+
+        Chunk right = world.getChunk(gridPos + 1);
+
+        if (right != null) {
+            right.queueEdgeLight(0);
+        }
+    }
+
+    private void queueEdgeLight(int x) {
+
+        for (int y = 0; y < WorldConstants.MAX_HEIGHT; y++) {
+
+            int packedLight = light[lightIndex(x, y)];
+
+            // a channel with a light value of 1 or less can't light anything else.
+            for (int channel = 0; channel < LightManager.CHANNEL_COUNT; channel++) {
+                if (LightManager.getChannel(packedLight, channel) > 1) {
+                    pendingLight.push(LightQueue.pack(x, y, 0, channel) | PENDING_SPREAD);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the type of the block at the given coordinates without creating a block view.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.MAX_HEIGHT - 1
+     * @return the type of the block.
+     */
+    public int getType(int x, int y) {
         int cellIndex = y >> WorldConstants.GRID_BITSHIFT;
         int localY = y - (cellIndex << WorldConstants.GRID_BITSHIFT);
 
-        Block block = cells[cellIndex].getBlockLocal(x, localY);
-        block.setTorchlight(val);
+        return cells[cellIndex].getType(x, localY);
+    }
+
+    /**
+     * Gets whether or not light sees the block at the given coordinates as solid.
+     * Reads the copy of the blocks owned by the LightEngine, not the blocks themselves.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.MAX_HEIGHT - 1
+     * @return true if the block was solid when the copy was last updated.
+     */
+    boolean isLightSolid(int x, int y) {
+        int index = lightIndex(x, y);
+        return (lightSolidity[index >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Marks the blocks of a cell as changed, so they are copied for the LightEngine the next time it is idle.
+     * @param cellIndex the index of the cell, or -1 for every cell.
+     */
+    void markSolidityChanged(int cellIndex) {
+        changedSolidityCells |= cellIndex < 0 ? -1 : 1 << cellIndex;
+    }
 
-        lightBfsQueue.add(block);
+    /**
+     * Copies which blocks are solid for the cells that changed since the last copy.
+     * Must only be called while the LightEngine is idle.
+     */
+    void updateLightSolidity() {
+
+        // each cell covers CELL_SIZE rows, which is exactly this many words.
+        final int cellWords = WorldConstants.CELL_SIZE * WorldConstants.CELL_SIZE / Long.SIZE;
+
+        int changed = changedSolidityCells & (-1 >>> (Integer.SIZE - WorldConstants.CELL_COUNT_Y));
+        changedSolidityCells = 0;
+
+        while (changed != 0) {
+
+            int cellIndex = Integer.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+
+            ChunkCell cell = cells[cellIndex];
+            int firstWord = cellIndex * cellWords;
+
+            if (cell.isUniform()) {
+                Arrays.fill(lightSolidity, firstWord, firstWord + cellWords, cell.getType(0, 0) > 0 ? -1L : 0L);
+                continue;
+            }
+
+            for (int word = 0; word < cellWords; word++) {
+
+                long bits = 0;
+
+                for (int bit = 0; bit < Long.SIZE; bit++) {
+
+                    int index = (word << 6) + bit;
+
+                    if (cell.getType(index & (WorldConstants.CELL_SIZE - 1), index >> WorldConstants.GRID_BITSHIFT) > 0) {
+                        bits |= 1L << bit;
+                    }
+                }
+
+                lightSolidity[firstWord + word] = bits;
+            }
+        }
     }
 
-    public Set<Block> getLightBfsQueue() {
-        return lightBfsQueue;
+    LightQueue getLightAdditions() {
+        return lightAdditions;
     }
 
-    public Set<Block> getLightRemovalBfsQueue() {
-        return lightRemovalBfsQueue;
+    LightQueue getLightRemovals() {
+        return lightRemovals;
+    }
+
+    /**
+     * Moves the light changes queued on the render thread into the back buffer and the queues of the LightEngine, in
+     * the order they were made. Must only be called while the LightEngine is idle.
+     */
+    void applyPendingLight() {
+
+        while (!pendingLight.isEmpty()) {
+
+            int node = pendingLight.poll();
+
+            int x = LightQueue.getX(node);
+            int y = LightQueue.getY(node);
+            int channel = LightQueue.getChannel(node);
+
+            switch (node & PENDING_OPERATION_MASK) {
+
+                case PENDING_SET: {
+
+                    int val = LightQueue.getLight(node);
+
+                    // a light source that is dimmer than the light already here needs the brighter light removed first.
+                    int current = getBackLight(x, y, channel);
+
+                    if (val < current) {
+                        setBackLight(x, y, channel, 0);
+                        lightRemovals.push(x, y, current, channel);
+                    }
+
+                    setBackLight(x, y, channel, val);
+                    lightAdditions.push(x, y, val, channel);
+                    break;
+                }
+
+                case PENDING_REMOVE: {
+
+                    int val = getBackLight(x, y, channel);
+
+                    if (val > 0) {
+                        setBackLight(x, y, channel, 0);
+                        lightRemovals.push(x, y, val, channel);
+                    }
+
+                    break;
+                }
+
+                default: {
+                    lightAdditions.push(x, y, 0, channel);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the rows of the back buffer that changed into the front buffer and the light texture.
+     * Must only be called while the LightEngine is idle.
+     */
+    void swapLightBuffers() {
+
+        for (int word = 0; word < LIGHT_ROW_WORDS; word++) {
+
+            long rows = dirtyLightRows[word];
+
+            while (rows != 0) {
+
+                int y = (word << 6) + Long.numberOfTrailingZeros(rows);
+                rows &= rows - 1;
+
+                for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
+
+                    int index = lightIndex(x, y);
+
+                    if (light[index] != backLight[index]) {
+                        light[index] = backLight[index];
+                        lightManager.setLight(x, y, light[index] & 0xFFFF);
+                    }
+                }
+            }
+
+            dirtyLightRows[word] = 0;
+        }
+    }
+
+    /**
+     * Determines whether or not this chunk has any light changes that have not been propagated.
+     * Must only be called while the LightEngine is idle.
+     * @return true if the chunk has light changes waiting to be propagated.
+     */
+    boolean hasQueuedLight() {
+        return !lightAdditions.isEmpty() || !lightRemovals.isEmpty();
+    }
+
+    /**
+     * Uploads the part of the light texture of this chunk that has changed. Must be called from the render thread.
+     * @param renderer the renderer to upload the texture with.
+     */
+    public void flushLightUpdates(Renderer renderer) {
+        lightManager.flush(renderer);
     }
 
     private byte calculateConfiguration(Block block) {
@@ -229,15 +620,16 @@ public class Chunk {
         // we need to tell each block in the 8 directions that their configuration may have changed.
         updateNeighborConfigurations(block);
 
-        // if this was the highest block, it's been removed, so find the next highest block.
+        // if this was the highest block, it's been removed, so the sky reaches down to the next highest block.
         if (heightmap[x] == y) {
-            for (int newHighestBlock = y; newHighestBlock >= 0; newHighestBlock--) {
 
-                Block seekBlock = getBlockLocal(x, newHighestBlock);
+            heightmap[x] = 0;
+
+            for (int newHighestBlock = y; newHighestBlock >= 0; newHighestBlock--) {
 
                 setSunlight(x, newHighestBlock, 15);
 
-                if (seekBlock.getType() > 0) {
+                if (getType(x, newHighestBlock) > 0) {
                     heightmap[x] = newHighestBlock;
                     break;
                 }
@@ -245,7 +637,8 @@ public class Chunk {
             }
         }
         else {
-            lightRemovalBfsQueue.add(block);
+            // the block is now air, so light from the surrounding blocks can reach further into it.
+            queueNeighborLight(x, y);
         }
 
     }
@@ -273,16 +666,44 @@ public class Chunk {
         // we need to tell each block in the 8 directions that their configuration may have changed.
         updateNeighborConfigurations(block);
 
-        // if this is now the highest block, set it in the heightmap
+        // if this is now the highest block, set it in the heightmap.
+        // The block stays in the sky but everything below it down to the old highest block is now in its shadow.
         if (y > heightmap[x]) {
+
+            int oldHighestBlock = heightmap[x];
             heightmap[x] = y;
-            lightRemovalBfsQueue.add(block);
+
+            for (int shadowY = y - 1; shadowY >= oldHighestBlock; shadowY--) {
+                removeSunlight(x, shadowY);
+            }
+        }
+        else {
+            // light loses more strength through a solid block, so remove it and let the surrounding blocks re-light it.
+            removeLight(x, y);
         }
 
     }
 
+    /**
+     * Determines whether or not this chunk has been unloaded.
+     * @return true if this chunk has been unloaded.
+     */
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
     public void destroy() {
+        destroyed = true;
         chunkNode.removeFromParent();
+
+        // hand the cell meshes back to the pool so they can be re-used by other chunks.
+        for (ChunkCell cell : cells) {
+
+            if (cell.getGeometry() != null) {
+                chunkGenerator.releaseMesh(cell.getGeometry().getMesh());
+                cell.setGeometry(null);
+            }
+        }
     }
 
 }
@@ -1,115 +1,159 @@
 package com.jayfella.pixels.world;
 
-import com.jayfella.pixels.core.NoiseEvaluator;
 import com.jayfella.pixels.core.WorldConstants;
 import com.jayfella.pixels.tile.BlobTile;
 import com.jayfella.pixels.tile.Block;
 import com.jayfella.pixels.tile.RotatedBlobTile;
-import com.jme3.math.Vector3f;
+import com.jayfella.pixels.tile.light.LightManager;
 import com.jme3.scene.Geometry;
-import com.jme3.scene.VertexBuffer;
-import com.jme3.util.BufferUtils;
 
-import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 public class ChunkCell {
 
     private final Chunk chunk;
     private final int cellIndex;
-    private final Block[][] blocks;
+
+    private static final int BLOCK_COUNT = WorldConstants.CELL_SIZE * WorldConstants.CELL_SIZE;
+
+    // block data is packed into parallel primitive arrays indexed by x + y * CELL_SIZE.
+    // The arrays are null while the cell is uniform.
+    private short[] types;
+    private byte[] configurations;
+
+    // A uniform cell is a cell where every block is identical (all air or all solid), such as the sky.
+    // They only store a single value for the whole cell and are promoted to full storage on the first change.
+    private short uniformType;
+    private byte uniformConfiguration;
 
     private Geometry geometry;
 
-    public ChunkCell(Chunk chunk, int cellIndex) {
+    // incremented every time the block data changes, so a mesh built from older data can be recognised and discarded.
+    private int version;
+
+    public ChunkCell(Chunk chunk, int cellIndex, DensityGrid densityGrid) {
         this.chunk = chunk;
         this.cellIndex = cellIndex;
 
-        blocks = generateCell();
+        generateCell(densityGrid);
     }
 
+    // creates a detached copy of the block data of the given cell.
+    private ChunkCell(ChunkCell source) {
+        this.chunk = source.chunk;
+        this.cellIndex = source.cellIndex;
+
+        this.types = source.types == null ? null : source.types.clone();
+        this.configurations = source.configurations == null ? null : source.configurations.clone();
+
+        this.uniformType = source.uniformType;
+        this.uniformConfiguration = source.uniformConfiguration;
+
+        this.version = source.version;
+    }
+
+    /**
+     * Converts local cell coordinates into an index of the packed block arrays.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @return the index of the block in the packed arrays.
+     */
+    static int index(int x, int y) {
+        return x + (y << WorldConstants.GRID_BITSHIFT);
+    }
 
     // Wang rotating tilesets (15 tiles, rotated).
-    public Block[][] generateCellWang() {
+    public void generateCellWang(DensityGrid densityGrid) {
 
-        Block[][] blocks = new Block[WorldConstants.CELL_SIZE][WorldConstants.CELL_SIZE];
+        // the density grid is chunk-local, so we only need to offset the y coordinate.
+        int cellY = cellIndex << WorldConstants.GRID_BITSHIFT;
 
-        // re-used in the loops.
-        int worldX = chunk.getGridPosition() << WorldConstants.GRID_BITSHIFT;
-        int worldY = cellIndex << WorldConstants.GRID_BITSHIFT;
+        // if the cell and its surrounding blocks are all the same we don't need to store each block.
+        if (densityGrid.isUniform(cellY - 1, cellY + WorldConstants.CELL_SIZE)) {
 
-        NoiseEvaluator noiseEvaluator = chunk.getWorld().getWorldNoiseEvaluator();
+            boolean solid = densityGrid.isSolid(0, cellY);
+
+            setUniform(solid ? 1 : 0, RotatedBlobTile.getConfiguration(solid, solid, solid, solid, solid, solid, solid, solid));
+            return;
+        }
+
+        types = new short[BLOCK_COUNT];
+        configurations = new byte[BLOCK_COUNT];
 
         for (int y = 0; y < WorldConstants.CELL_SIZE; y++) {
             for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
 
-                int posX = worldX + x;
-                int posY = worldY + y;
+                int posY = cellY + y;
 
                 // currently either visible or not.
-                float fVal = noiseEvaluator.evaluate(posX, posY);
-                int type = fVal > 0.5 ? 1 : 0;
+                int type = densityGrid.isSolid(x, posY) ? 1 : 0;
 
                 // determine if there are any blocks on any sides.
-                boolean n = noiseEvaluator.evaluate(posX + 0, posY + 1) > 0.5;
-                boolean e = noiseEvaluator.evaluate(posX + 1, posY + 0) > 0.5;
-                boolean s = noiseEvaluator.evaluate(posX + 0, posY - 1) > 0.5;
-                boolean w = noiseEvaluator.evaluate(posX - 1, posY + 0) > 0.5;
+                boolean n = densityGrid.isSolid(x + 0, posY + 1);
+                boolean e = densityGrid.isSolid(x + 1, posY + 0);
+                boolean s = densityGrid.isSolid(x + 0, posY - 1);
+                boolean w = densityGrid.isSolid(x - 1, posY + 0);
 
-                boolean ne = noiseEvaluator.evaluate(posX + 1, posY + 1) > 0.5;
-                boolean se = noiseEvaluator.evaluate(posX + 1, posY - 1) > 0.5;
-                boolean sw = noiseEvaluator.evaluate(posX - 1, posY - 1) > 0.5;
-                boolean nw = noiseEvaluator.evaluate(posX- 1, posY + 1) > 0.5;
+                boolean ne = densityGrid.isSolid(x + 1, posY + 1);
+                boolean se = densityGrid.isSolid(x + 1, posY - 1);
+                boolean sw = densityGrid.isSolid(x - 1, posY - 1);
+                boolean nw = densityGrid.isSolid(x - 1, posY + 1);
 
-                byte configuration = RotatedBlobTile.getConfiguration(n, e, s, w, nw, ne, sw, se);
+                int index = index(x, y);
 
-                blocks[x][y] = new Block(this, type, configuration, x, y);
+                types[index] = (short) type;
+                configurations[index] = RotatedBlobTile.getConfiguration(n, e, s, w, nw, ne, sw, se);
             }
         }
 
-        return blocks;
     }
 
 
 
     // traditional blob tileset (48 tiles)
-    public Block[][] generateCell() {
+    public void generateCell(DensityGrid densityGrid) {
+
+        // the density grid is chunk-local, so we only need to offset the y coordinate.
+        int cellY = cellIndex << WorldConstants.GRID_BITSHIFT;
 
-        Block[][] blocks = new Block[WorldConstants.CELL_SIZE][WorldConstants.CELL_SIZE];
+        // if the cell and its surrounding blocks are all the same we don't need to store each block.
+        if (densityGrid.isUniform(cellY - 1, cellY + WorldConstants.CELL_SIZE)) {
 
-        // re-used in the loops.
-        int worldX = chunk.getGridPosition() << WorldConstants.GRID_BITSHIFT;
-        int worldY = cellIndex << WorldConstants.GRID_BITSHIFT;
+            boolean solid = densityGrid.isSolid(0, cellY);
 
-        NoiseEvaluator noiseEvaluator = chunk.getWorld().getWorldNoiseEvaluator();
+            setUniform(solid ? 1 : 0, BlobTile.getConfiguration(solid, solid, solid, solid, solid, solid, solid, solid));
+            return;
+        }
+
+        types = new short[BLOCK_COUNT];
+        configurations = new byte[BLOCK_COUNT];
 
         for (int y = 0; y < WorldConstants.CELL_SIZE; y++) {
             for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
 
-                int posX = worldX + x;
-                int posY = worldY + y;
+                int posY = cellY + y;
 
                 // currently either visible or not.
-                float fVal = noiseEvaluator.evaluate(posX, posY);
-                int type = fVal > 0.5 ? 1 : 0;
+                int type = densityGrid.isSolid(x, posY) ? 1 : 0;
 
                 // determine if there are any blocks on any sides.
-                boolean n = noiseEvaluator.evaluate(posX + 0, posY + 1) > 0.5;
-                boolean e = noiseEvaluator.evaluate(posX + 1, posY + 0) > 0.5;
-                boolean s = noiseEvaluator.evaluate(posX + 0, posY - 1) > 0.5;
-                boolean w = noiseEvaluator.evaluate(posX - 1, posY + 0) > 0.5;
+                boolean n = densityGrid.isSolid(x + 0, posY + 1);
+                boolean e = densityGrid.isSolid(x + 1, posY + 0);
+                boolean s = densityGrid.isSolid(x + 0, posY - 1);
+                boolean w = densityGrid.isSolid(x - 1, posY + 0);
 
-                boolean ne = noiseEvaluator.evaluate(posX + 1, posY + 1) > 0.5;
-                boolean se = noiseEvaluator.evaluate(posX + 1, posY - 1) > 0.5;
-                boolean sw = noiseEvaluator.evaluate(posX - 1, posY - 1) > 0.5;
-                boolean nw = noiseEvaluator.evaluate(posX- 1, posY + 1) > 0.5;
+                boolean ne = densityGrid.isSolid(x + 1, posY + 1);
+                boolean se = densityGrid.isSolid(x + 1, posY - 1);
+                boolean sw = densityGrid.isSolid(x - 1, posY - 1);
+                boolean nw = densityGrid.isSolid(x - 1, posY + 1);
 
-                byte configuration = BlobTile.getConfiguration(n, e, s, w, nw, ne, sw, se);
+                int index = index(x, y);
 
-                blocks[x][y] = new Block(this, type, configuration, x, y);
+                types[index] = (short) type;
+                configurations[index] = BlobTile.getConfiguration(n, e, s, w, nw, ne, sw, se);
             }
         }
 
-        return blocks;
     }
 
 
@@ -121,76 +165,170 @@ public class ChunkCell {
         return cellIndex;
     }
 
-    Block[][] getBlocks() {
-        return blocks;
+    /**
+     * Returns a transient view of the block at the given coordinates.
+     * The returned object does not hold any data itself, it reads and writes the packed arrays of this cell, so it
+     * should not be stored for longer than it is required.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @return a view of the block at the given coordinates.
+     */
+    public Block getBlockLocal(int x, int y) {
+        return new Block(this, x, y);
     }
 
-    public Block getBlockLocal(int x, int y) {
-        return blocks[x][y];
+    private void setUniform(int type, byte configuration) {
+        types = null;
+        configurations = null;
+
+        uniformType = (short) type;
+        uniformConfiguration = configuration;
     }
 
-    public void removeBlock(int x, int y) {
-        blocks[x][y].setType(0); // air
+    /**
+     * Converts a uniform cell into a cell that stores each block individually.
+     * This happens lazily when a block in a uniform cell is changed to a different value.
+     */
+    private void promote() {
+
+        short[] types = new short[BLOCK_COUNT];
+        byte[] configurations = new byte[BLOCK_COUNT];
+
+        Arrays.fill(types, uniformType);
+        Arrays.fill(configurations, uniformConfiguration);
+
+        this.configurations = configurations;
+        this.types = types;
     }
 
-    public void setSunlight(int x, int y, int val) {
+    /**
+     * Creates a copy of the block data of this cell that can be read from another thread while this cell is edited.
+     * The copy has no geometry and should not be edited.
+     * @return a copy of the block data of this cell.
+     */
+    ChunkCell snapshot() {
+        return new ChunkCell(this);
+    }
 
-        blocks[x][y].setSunlight(val);
+    /**
+     * Gets the version of the block data of this cell, which changes every time a block in the cell is changed.
+     * @return the version of the block data.
+     */
+    public int getVersion() {
+        return version;
+    }
 
-        // we can't update an AIR block because they aren't rendered.
-        if (blocks[x][y].getType() == 0) {
-            return;
+    /**
+     * Determines whether or not every block in this cell is identical.
+     * @return true if every block in this cell is identical.
+     */
+    public boolean isUniform() {
+        return types == null;
+    }
+
+    /**
+     * Determines whether or not this cell consists entirely of air.
+     * @return true if this cell is uniform and every block is air.
+     */
+    public boolean isEmpty() {
+        return types == null && uniformType == 0;
+    }
+
+    /**
+     * Counts the amount of blocks in this cell that are not air.
+     * @return the amount of solid blocks in this cell.
+     */
+    public int countSolidBlocks() {
+
+        if (types == null) {
+            return uniformType > 0 ? BLOCK_COUNT : 0;
         }
 
-        if (geometry != null) {
+        int count = 0;
 
-            // iterate over each block, and if a block is NOT air, add 4 to the vertex count;
-            int index = 0;
-            boolean foundItself = false;
+        for (short type : types) {
+            if (type > 0) {
+                count++;
+            }
+        }
 
-            // iterate over each block until it hits itself so we can determine which vertex to set the light value to.
-            for (int j = 0; j < WorldConstants.CELL_SIZE; j++) {
-                for (int i = 0; i < WorldConstants.CELL_SIZE; i++) {
+        return count;
+    }
 
-                    if (x == i && y == j) {
-                        foundItself = true;
-                        break;
-                    }
+    public int getType(int x, int y) {
+        return types == null ? uniformType : types[index(x, y)];
+    }
 
-                    // if the block is NOT air...
-                    if (blocks[i][j].getType() > 0) {
-                        index++;
-                    }
-                }
+    public void setType(int x, int y, int type) {
 
-                if (foundItself) {
-                    break;
-                }
+        if (types == null) {
+
+            if (type == uniformType) {
+                return;
             }
 
-            index *= 4;
+            promote();
+        }
 
-            FloatBuffer floatBuffer = geometry.getMesh().getFloatBuffer(VertexBuffer.Type.TexCoord2);
-            Vector3f[] blockData = BufferUtils.getVector3Array(floatBuffer);
+        types[index(x, y)] = (short) type;
+        version++;
 
-            for (int i = 0; i < 4; i++) {
+        chunk.markSolidityChanged(cellIndex);
+    }
 
-                try {
-                    Vector3f data = blockData[index + i];
-                    data.z = blocks[x][y].getSunlight() / 15f;
-                    BufferUtils.setInBuffer(data, floatBuffer, index + i);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+    public byte getConfiguration(int x, int y) {
+        return configurations == null ? uniformConfiguration : configurations[index(x, y)];
+    }
+
+    public void setConfiguration(int x, int y, byte configuration) {
 
-            geometry.getMesh().getBuffer(VertexBuffer.Type.TexCoord2).setUpdateNeeded();
+        if (configurations == null) {
 
+            if (configuration == uniformConfiguration) {
+                return;
+            }
+
+            promote();
         }
+
+        configurations[index(x, y)] = configuration;
+        version++;
+    }
+
+    /**
+     * Gets the packed light value of the block at the given coordinates.
+     * Light is stored in the light map of the chunk rather than the cell.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @return the packed light value.
+     */
+    public int getLight(int x, int y) {
+        return chunk.getLight(x, (cellIndex << WorldConstants.GRID_BITSHIFT) + y);
+    }
+
+    /**
+     * Queues the packed light value of the block at the given coordinates to be set and spread by the LightEngine.
+     * @param x a value between 0 and WorldConstants.CELL_SIZE - 1
+     * @param y a value between 0 and WorldConstants.CELL_SIZE - 1
+     */
+    public void setLight(int x, int y, int value) {
+        chunk.setLight(x, (cellIndex << WorldConstants.GRID_BITSHIFT) + y, value);
+    }
+
+    public int getSunlight(int x, int y) {
+        return LightManager.getChannel(getLight(x, y), LightManager.CHANNEL_SUN);
+    }
+
+    public void removeBlock(int x, int y) {
+        setType(x, y, 0); // air
+    }
+
+    public void setSunlight(int x, int y, int val) {
+        chunk.setSunlight(x, (cellIndex << WorldConstants.GRID_BITSHIFT) + y, val);
     }
 
     public void setTorchlight(int x, int y, int val) {
-        blocks[x][y].setTorchlight(val);
+        chunk.setTorchlight(x, (cellIndex << WorldConstants.GRID_BITSHIFT) + y, val);
     }
 
     public Geometry getGeometry() {
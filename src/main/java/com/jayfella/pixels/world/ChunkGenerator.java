@@ -2,32 +2,46 @@ package com.jayfella.pixels.world;
 
 import com.jayfella.pixels.core.NoiseEvaluator;
 import com.jayfella.pixels.core.WorldConstants;
-import com.jayfella.pixels.mesh.JmeMesh;
+import com.jayfella.pixels.grid.ChunkMap;
+import com.jayfella.pixels.mesh.QuadMeshBuilder;
+import com.jayfella.pixels.mesh.QuadMeshPool;
 import com.jayfella.pixels.tile.BlobTile;
-import com.jayfella.pixels.tile.Block;
-import com.jayfella.pixels.tile.BlockFace;
-import com.jayfella.pixels.tile.RotatedBlobTile;
-import com.jme3.math.Vector2f;
-import com.jme3.math.Vector3f;
+import com.jayfella.pixels.tile.light.LightManager;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
-import com.jme3.scene.VertexBuffer;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
 
 public class ChunkGenerator  {
 
+    // the block tiles are laid out in a sprite sheet of 7 by 7 tiles.
+    static final int SPRITE_SHEET_COLUMNS = 7;
+    static final float SPRITE_SHEET_TILE_SIZE = 1.0f / SPRITE_SHEET_COLUMNS;
+
     private final World world;
     private final NoiseEvaluator noiseEvaluator;
 
+    // cell meshes are pooled so editing blocks and loading chunks doesn't churn native memory.
+    private final QuadMeshPool meshPool = new QuadMeshPool(WorldConstants.CELL_SIZE * WorldConstants.CELL_SIZE, 64);
+
     public ChunkGenerator(World world) {
         this.world = world;
         this.noiseEvaluator = world.getWorldNoiseEvaluator();
     }
 
+    // samples the noise of the whole chunk column, padded by one block on each side.
+    public DensityGrid sampleDensity(Chunk chunk) {
+
+        float[] density = new float[DensityGrid.WIDTH * DensityGrid.HEIGHT];
+
+        // the world x coordinate of the padded column.
+        int worldX = (chunk.getGridPosition() << WorldConstants.GRID_BITSHIFT) - 1;
+
+        noiseEvaluator.evaluateRegion(worldX, -1, DensityGrid.WIDTH, DensityGrid.HEIGHT, density);
+
+        return new DensityGrid(density);
+    }
+
     // finds the highest block in each column of the chunk.
     public void initHeightMap(Chunk chunk) {
 
@@ -39,13 +53,17 @@ public class ChunkGenerator  {
                 int cellY = y >> WorldConstants.GRID_BITSHIFT;
                 ChunkCell chunkCell = chunk.getCell(cellY);
 
-                int cellLocalY = y - (cellY << WorldConstants.GRID_BITSHIFT);
+                // an empty cell has no blocks, so skip straight to the top of the cell below.
+                if (chunkCell.isEmpty()) {
+                    y = cellY << WorldConstants.GRID_BITSHIFT;
+                    continue;
+                }
 
-                Block block = chunkCell.getBlockLocal(x, cellLocalY);
+                int cellLocalY = y - (cellY << WorldConstants.GRID_BITSHIFT);
 
                 // if the block is not air and it's higher than the current value
                 // set the new highest value to this block.
-                if (block.getType() > 0 && y > chunk.getHeightMapValue(x)) {
+                if (chunkCell.getType(x, cellLocalY) > 0 && y > chunk.getHeightMapValue(x)) {
                     chunk.setHeightMapValue(x, y);
 
                     // move to the next column.
@@ -63,416 +81,145 @@ public class ChunkGenerator  {
 
     }
 
-    // sets all air and the highest block to sunlight 15
+    /**
+     * Lights a freshly generated chunk before it is handed to the render thread.
+     * Every block from the top of each column down to the highest block is in direct sunlight, which is filled in
+     * directly. Only the sunlit blocks that border a block that isn't sunlit need to spread any light, so only they are
+     * seeded into the flood-fill, which is then run within the chunk. Light is spread into neighboring chunks later by
+     * the LightEngine, once the chunk is loaded.
+     * @param chunk the chunk to light.
+     */
     public void initLightMap(Chunk chunk) {
 
-        for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
-
-            int heightmapVal = chunk.getHeightMapValue(x);
-
-            for (int y = WorldConstants.MAX_HEIGHT - 1; y >= heightmapVal; y--) {
-                chunk.setSunlight(x, y, 15);
-            }
-        }
-
-    }
+        int[] heightmap = new int[WorldConstants.CELL_SIZE];
+        int maxHeight = 0;
 
-    public boolean applyLightAdditions(Chunk chunk) {
-
-        Iterator<Block> iterator = chunk.getLightBfsQueue().iterator();
-
-        if (iterator.hasNext()) {
-
-            Block block = iterator.next();
-            iterator.remove();
-
-            doLight(block, block.getSunlight());
-
-            return true;
+        for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
+            heightmap[x] = chunk.getHeightMapValue(x);
+            maxHeight = Math.max(maxHeight, heightmap[x]);
         }
 
-        return false;
-    }
-
-    private void doLight(Block block, int light) {
-
-        if (light > 0) {
+        // every row above the highest block is open sky.
+        chunk.fillBackSunlight(maxHeight, WorldConstants.MAX_HEIGHT, 15);
 
-            // this just sets the value of the property and sets it on the mesh.
-            block.getChunkCell().setSunlight(block.getX(), block.getY(), light);
-
-            light--;
-
-            // LightNode neighbor;
-            Block neighbor;
-
-            for (BlockFace face : BlockFace.values()) {
-
-                neighbor = block.getNeighbor(face);
+        for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
 
-                if (neighbor != null && neighbor.getSunlight() < light) {
+            chunk.fillBackColumnSunlight(x, heightmap[x], maxHeight, 15);
 
-                    // this will add it to the BFS queue.
-                    neighbor.getChunkCell()
-                            .getChunk()
-                            .setSunlight(neighbor.getX(), neighbor.getWorldY(),
-                                    neighbor.getType() > 0 ? light - 1 : light
-                            );
+            // the highest block spreads light downwards.
+            chunk.getLightAdditions().push(x, heightmap[x], 15, LightManager.CHANNEL_SUN);
 
-                }
+            // where a neighboring column is higher, the sunlit blocks beside it spread light sideways under overhangs.
+            int left = x > 0 ? heightmap[x - 1] : 0;
+            int right = x < WorldConstants.CELL_SIZE - 1 ? heightmap[x + 1] : 0;
 
+            for (int y = heightmap[x] + 1; y < Math.max(left, right); y++) {
+                chunk.getLightAdditions().push(x, y, 15, LightManager.CHANNEL_SUN);
             }
-
-        }
-
-    }
-
-    public boolean applyLightRemovals(Chunk chunk) {
-
-        Iterator<Block> iterator = chunk.getLightRemovalBfsQueue().iterator();
-
-        if (iterator.hasNext()) {
-
-            Block block = iterator.next();
-            iterator.remove();
-
-            doLightRemoval(block, block.getSunlight());
-
-            return true;
         }
 
-        return false;
+        new LightPropagation(new ChunkMap(Collections.singletonList(chunk)), Long.MAX_VALUE, false).run();
 
+        chunk.publishLight();
     }
 
-    public void doLightRemoval(Block block, int light) {
-
-        // this just sets the value of the property and sets it on the mesh.
-        block.getChunkCell().setSunlight(block.getX(), block.getY(), light);
-
-        // Block neighbor;
-        Block neighbor;
-
-        for (BlockFace face : BlockFace.values()) {
-
-            neighbor = block.getNeighbor(face);
-
-            if (neighbor != null) {
-
-                if (neighbor.getSunlight() > 0 && neighbor.getSunlight() < light) {
-
-                    // neighbor.getChunk().getLightManager().lightRemovalBfsQue.add(neighbor);
-
-                    neighbor.setSunlight(0);
-
-                    neighbor.getChunkCell()
-                            .getChunk()
-                            .getLightRemovalBfsQueue()
-                            .add(neighbor);
-
-
-                }
-                else if (neighbor.getSunlight() >= light) {
-
-                    // neighbor.getChunk().getLightManager().lightBfsQueue.add(neighbor);
-
-                    // this will add it to the BFS queue.
-                    neighbor.getChunkCell()
-                            .getChunk()
-                            .setSunlight(neighbor.getX(), neighbor.getWorldY(), neighbor.getSunlight());
-                }
-            }
-        }
-
+    /**
+     * Returns the mesh of a cell to the pool so it can be re-used.
+     * The mesh must no longer be attached to a geometry that will be rendered.
+     * @param mesh the mesh to release.
+     */
+    public void releaseMesh(Mesh mesh) {
+        meshPool.release(mesh);
     }
 
     public Geometry generateGeometry(ChunkCell chunkCell) {
 
+        // there's nothing to draw in an empty cell.
+        if (chunkCell.isEmpty()) {
+            return null;
+        }
+
         Mesh mesh = generateSpriteSheetMesh(chunkCell);
 
         if (mesh.getVertexCount() > 0) {
-
-            String nameFormat = "Chunk %d | Cell: %d";
-
-            Geometry geometry = new Geometry(String.format(nameFormat, chunkCell.getChunk().getGridPosition(), chunkCell.getCellIndex()), mesh);
-
-            geometry.setMaterial(world.getWorldMaterial());
-            geometry.setLocalTranslation(0, chunkCell.getCellIndex() << WorldConstants.GRID_BITSHIFT, 0);
-
-            return geometry;
+            return createGeometry(chunkCell, mesh);
         }
 
         return null;
     }
 
-    public Mesh generateMeshWang(ChunkCell chunkCell) {
-
-        List<Vector3f> vertices = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-        List<Vector2f> texCoords = new ArrayList<>();
-
-        // add the lookup int to "voxel data".
-        // x = which texture variant to show (top-left, etc.. one of the 48 variants.).
-        // y = which texture to show (grass, dirt, etc)
-        // z = lightValue (for now)
-        // right now we only have one type, so it's just zero
-        List<Vector3f> blockData = new ArrayList<>();
-
-        int indexStart = 0;
-
-        for (int y = 0; y < WorldConstants.CELL_SIZE; y++) {
-            for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
-
-                Block block = chunkCell.getBlockLocal(x, y);
-
-                if (block.getType() > 0) {
+    /**
+     * Creates the geometry of a chunk cell from a mesh that has already been generated.
+     * @param chunkCell the cell the mesh was generated from.
+     * @param mesh      the mesh of the cell.
+     * @return the geometry of the cell, positioned in its chunk.
+     */
+    public Geometry createGeometry(ChunkCell chunkCell, Mesh mesh) {
 
+        String nameFormat = "Chunk %d | Cell: %d";
 
+        Geometry geometry = new Geometry(String.format(nameFormat, chunkCell.getChunk().getGridPosition(), chunkCell.getCellIndex()), mesh);
 
-                    Collections.addAll(vertices,
-                            new Vector3f(x + 0, y + 0, 0),
-                            new Vector3f(x + 1, y + 0, 0),
-                            new Vector3f(x + 1, y + 1, 0),
-                            new Vector3f(x + 0, y + 1, 0)
-                    );
-
-                    Collections.addAll(indices,
-                            indexStart + 0,
-                            indexStart + 1,
-                            indexStart + 2,
-                            indexStart + 0,
-                            indexStart + 2,
-                            indexStart + 3);
-
-                    int rotations = RotatedBlobTile.getTextureRotationCount(block.getConfiguration());
-                    Vector2f[] coords = getTextureCoords(rotations);
-                    Collections.addAll(texCoords, coords);
-
-                    if (rotations > 0) {
-                        String a = "b";
-                    }
-
-                    float lightVal = block.getSunlight() / 15f;
-                    int textureId = RotatedBlobTile.getTextureIndex(block.getConfiguration());
-
-                    Collections.addAll(blockData,
-                            new Vector3f(textureId, 0, lightVal),
-                            new Vector3f(textureId, 0, lightVal),
-                            new Vector3f(textureId, 0, lightVal),
-                            new Vector3f(textureId, 0, lightVal));
-
-                    indexStart += 4;
-                }
-            }
-        }
+        geometry.setMaterial(world.getWorldMaterial());
+        geometry.setLocalTranslation(0, chunkCell.getCellIndex() << WorldConstants.GRID_BITSHIFT, 0);
 
-        JmeMesh mesh = new JmeMesh();
-        mesh.set(VertexBuffer.Type.Position, vertices);
-        mesh.set(VertexBuffer.Type.Index, indices);
-        mesh.set(VertexBuffer.Type.TexCoord, texCoords);
-        mesh.set(VertexBuffer.Type.TexCoord2, blockData);
-
-        return mesh;
+        return geometry;
     }
 
-    private Vector2f[] getTextureCoords(int rotations) {
+    public Mesh generateSpriteSheetMesh(ChunkCell chunkCell) {
 
-        switch (rotations) {
+        // a uniform cell is solid all the way through, so every block is surrounded by solid blocks and uses the same
+        // tile. The material repeats the tile once per block, so the whole cell is drawn with a single quad.
+        if (chunkCell.isUniform()) {
 
-            case 0: {
-                return new Vector2f[] {
-                        new Vector2f(0, 0),
-                        new Vector2f(1, 0),
-                        new Vector2f(1, 1),
-                        new Vector2f(0,1)
-                };
+            if (chunkCell.isEmpty()) {
+                return new Mesh();
             }
 
-            case 1: {
-                return new Vector2f[] {
-                        new Vector2f(1, 0),
-                        new Vector2f(1, 1),
-                        new Vector2f(0,1),
-                        new Vector2f(0, 0),
-                };
-            }
-
-            case 2: {
-                return new Vector2f[] {
-                        new Vector2f(1, 1),
-                        new Vector2f(0,1),
-                        new Vector2f(0, 0),
-                        new Vector2f(1, 0),
-                };
-            }
+            QuadMeshBuilder meshBuilder = new QuadMeshBuilder(meshPool.acquire(1));
 
-            case 3: {
-                return new Vector2f[] {
-                        new Vector2f(0,1),
-                        new Vector2f(0, 0),
-                        new Vector2f(1, 0),
-                        new Vector2f(1, 1),
+            int lookupId = BlobTile.toArtistsLayout(BlobTile.getTextureIndex(chunkCell.getConfiguration(0, 0)));
+            addTile(meshBuilder, 0, 0, WorldConstants.CELL_SIZE, lookupId);
 
-                };
-            }
-
-            default: throw new RuntimeException("Invalid rotator: " + rotations);
+            return meshBuilder.build();
         }
 
-    }
-
-    public Mesh generateMesh(ChunkCell chunkCell) {
-
-        List<Vector3f> vertices = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-        List<Vector2f> texCoords = new ArrayList<>();
-
-        // add the lookup int to "voxel data".
-        // x = which texture variant to show (top-left, etc.. one of the 48 variants.).
-        // y = which texture to show (grass, dirt, etc)
-        // z = lightValue (for now)
-        // right now we only have one type, so it's just zero
-        List<Vector3f> blockData = new ArrayList<>();
-
-        int indexStart = 0;
-
-            for (int y = 0; y < WorldConstants.CELL_SIZE; y++) {
-                for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
+        // count the blocks first to pick the size class of the pooled mesh. The pool rounds the count up to a power of two.
+        int quadCount = chunkCell.countSolidBlocks();
 
-                Block block = chunkCell.getBlockLocal(x, y);
-
-                if (block.getType() > 0) {
-
-                    Collections.addAll(vertices,
-                            new Vector3f(x + 0, y + 0, 0),
-                            new Vector3f(x + 1, y + 0, 0),
-                            new Vector3f(x + 0, y + 1, 0),
-                            new Vector3f(x + 1, y + 1, 0));
-
-                    Collections.addAll(indices,
-                            indexStart + 0,
-                            indexStart + 1,
-                            indexStart + 2,
-                            indexStart + 2,
-                            indexStart + 1,
-                            indexStart + 3);
-
-                    Collections.addAll(texCoords,
-                            new Vector2f(0, 0),
-                            new Vector2f(1, 0),
-                            new Vector2f(0, 1),
-                            new Vector2f(1,1));
-
-
-                    int lookupId = BlobTile.getTextureIndex(block.getConfiguration());
+        if (quadCount == 0) {
+            return new Mesh();
+        }
 
-                    float lightVal = block.getSunlight() / 15f;
+        QuadMeshBuilder meshBuilder = new QuadMeshBuilder(meshPool.acquire(quadCount));
 
-                    Collections.addAll(blockData,
-                            new Vector3f(lookupId, 0, lightVal),
-                            new Vector3f(lookupId, 0, lightVal),
-                            new Vector3f(lookupId, 0, lightVal),
-                            new Vector3f(lookupId, 0, lightVal));
+        for (int y = 0; y < WorldConstants.CELL_SIZE; y++) {
+            for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
 
-                    indexStart += 4;
+                if (chunkCell.getType(x, y) > 0) {
+                    int textureId = BlobTile.getTextureIndex(chunkCell.getConfiguration(x, y));
+                    addTile(meshBuilder, x, y, 1, BlobTile.toArtistsLayout(textureId));
                 }
             }
         }
 
-        JmeMesh mesh = new JmeMesh();
-        mesh.set(VertexBuffer.Type.Position, vertices);
-        mesh.set(VertexBuffer.Type.Index, indices);
-        mesh.set(VertexBuffer.Type.TexCoord, texCoords);
-        mesh.set(VertexBuffer.Type.TexCoord2, blockData);
-
-        return mesh;
+        return meshBuilder.build();
     }
 
-    public Mesh generateSpriteSheetMesh(ChunkCell chunkCell) {
+    // adds a square of blocks that all use the tile at the given index of the sprite sheet.
+    private static void addTile(QuadMeshBuilder meshBuilder, int x, int y, int size, int lookupId) {
 
-        List<Vector3f> vertices = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-        List<Vector2f> texCoords = new ArrayList<>();
+        // row    = (int)(index / width)
+        // column = index % width
+        int row = lookupId / SPRITE_SHEET_COLUMNS;
+        int col = lookupId % SPRITE_SHEET_COLUMNS;
 
         // add the lookup int to "voxel data".
         // x = which texture variant to show (top-left, etc.. one of the 48 variants.).
         // y = which texture to show (grass, dirt, etc)
-        // z = lightValue (for now)
+        // z = unused. Light is sampled from the light texture of the chunk.
         // right now we only have one type, so it's just zero
-        List<Vector3f> blockData = new ArrayList<>();
-
-        int indexStart = 0;
-
-        for (int y = 0; y < WorldConstants.CELL_SIZE; y++) {
-            for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
-
-                Block block = chunkCell.getBlockLocal(x, y);
-
-                if (block.getType() > 0) {
-
-                    Collections.addAll(vertices,
-                            new Vector3f(x + 0, y + 0, 0),
-                            new Vector3f(x + 1, y + 0, 0),
-                            new Vector3f(x + 1, y + 1, 0),
-                            new Vector3f(x + 0, y + 1, 0));
-
-                    Collections.addAll(indices,
-                            indexStart + 0,
-                            indexStart + 1,
-                            indexStart + 2,
-                            indexStart + 0,
-                            indexStart + 2,
-                            indexStart + 3);
-
-
-                    // calculate the row and column from the texture index.
-                    int textureId = BlobTile.getTextureIndex(block.getConfiguration());
-                    int lookupId = BlobTile.toArtistsLayout(textureId);
-
-                    // row    = (int)(index / width)
-                    // column = index % width
-                    int row = lookupId / 7;
-                    int col = lookupId % 7;
-
-                    float size = 1.0f / 7.0f;
-
-                    float bl_x = size * col;
-                    float bl_y = size * row;
-
-                    // bl, br, tr, tl
-                    Collections.addAll(texCoords,
-                            new Vector2f(bl_x, bl_y),
-                            new Vector2f(bl_x + size, bl_y),
-                            new Vector2f(bl_x + size, bl_y + size),
-                            new Vector2f(bl_x, bl_y + size)
-                    );
-
-//                    Collections.addAll(texCoords,
-//                            new Vector2f(0, 0),
-//                            new Vector2f(1, 0),
-//                            new Vector2f(0, 1),
-//                            new Vector2f(1,1));
-
-                    float lightVal = block.getSunlight() / 15f;
-
-                    Collections.addAll(blockData,
-                            new Vector3f(lookupId, 0, lightVal),
-                            new Vector3f(lookupId, 0, lightVal),
-                            new Vector3f(lookupId, 0, lightVal),
-                            new Vector3f(lookupId, 0, lightVal));
-
-                    indexStart += 4;
-                }
-            }
-        }
-
-        JmeMesh mesh = new JmeMesh();
-        mesh.set(VertexBuffer.Type.Position, vertices);
-        mesh.set(VertexBuffer.Type.Index, indices);
-        mesh.set(VertexBuffer.Type.TexCoord, texCoords);
-        mesh.set(VertexBuffer.Type.TexCoord2, blockData);
-
-        return mesh;
+        meshBuilder.addQuad(x, y, size, size, SPRITE_SHEET_TILE_SIZE * col, SPRITE_SHEET_TILE_SIZE * row, lookupId, 0, 0);
     }
 
 }
@@ -0,0 +1,66 @@
+package com.jayfella.pixels.world;
+
+import com.jayfella.pixels.core.WorldConstants;
+
+/**
+ * The world noise of a whole chunk column, sampled once and padded by one block on every side.
+ * Each block needs the solidity of its eight neighbors to determine its blob configuration, so sampling the column
+ * once means the noise is evaluated 18 x 258 times instead of nine times for every block in the chunk.
+ */
+public class DensityGrid {
+
+    public static final int WIDTH = WorldConstants.CELL_SIZE + 2;
+    public static final int HEIGHT = WorldConstants.MAX_HEIGHT + 2;
+
+    // the threshold above which a sample is considered solid.
+    private static final float SOLID_THRESHOLD = 0.5f;
+
+    private final float[] density;
+
+    DensityGrid(float[] density) {
+        this.density = density;
+    }
+
+    /**
+     * Gets the noise value at the given chunk-local coordinates.
+     * @param x a value between -1 and WorldConstants.CELL_SIZE
+     * @param y a value between -1 and WorldConstants.MAX_HEIGHT
+     * @return the noise value at the given coordinates.
+     */
+    public float getDensity(int x, int y) {
+        return density[(x + 1) + (y + 1) * WIDTH];
+    }
+
+    /**
+     * Determines whether or not the given chunk-local coordinates are solid.
+     * @param x a value between -1 and WorldConstants.CELL_SIZE
+     * @param y a value between -1 and WorldConstants.MAX_HEIGHT
+     * @return true if the coordinates are solid, false if they are air.
+     */
+    public boolean isSolid(int x, int y) {
+        return getDensity(x, y) > SOLID_THRESHOLD;
+    }
+
+    /**
+     * Determines whether or not every sample in the given rows, including the padding, is either solid or air.
+     * @param minY the lowest row to check, between -1 and WorldConstants.MAX_HEIGHT
+     * @param maxY the highest row to check, between -1 and WorldConstants.MAX_HEIGHT
+     * @return true if every sample in the given rows is solid, or every sample is air.
+     */
+    public boolean isUniform(int minY, int maxY) {
+
+        boolean solid = isSolid(-1, minY);
+
+        int start = (minY + 1) * WIDTH;
+        int end = (maxY + 2) * WIDTH;
+
+        for (int i = start; i < end; i++) {
+            if ((density[i] > SOLID_THRESHOLD) != solid) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+}
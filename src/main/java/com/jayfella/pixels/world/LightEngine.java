@@ -0,0 +1,133 @@
+package com.jayfella.pixels.world;
+
+import com.jayfella.pixels.grid.ChunkMap;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Flood-fills sunlight and colored light through the loaded chunks on a dedicated thread.
+ *
+ * Each chunk has a double-buffered light map. A light job propagates light into the back buffers of a snapshot of
+ * the loaded chunks. While no job is running the render thread copies the rows that changed into the front buffers,
+ * which are used to render, and hands over any light changes that were queued since the last job. It also copies which
+ * blocks are solid in the cells that were edited, so a job never reads blocks while they are being changed.
+ *
+ * A job runs until the queues are empty or its time budget is spent, so large changes become visible progressively
+ * instead of all at once.
+ *
+ * Light only spreads from a chunk if both of its neighbors are in the snapshot. Nodes that spread into a neighbor are
+ * added to the queue of that neighbor and wait there until it can be processed.
+ */
+public class LightEngine {
+
+    private final long budgetNanos;
+    private final ExecutorService executor;
+
+    private Future<?> job;
+
+    // the chunks handed to the last job. Rebuilt only when the loaded chunks change.
+    private Collection<Chunk> snapshotSource;
+    private ChunkMap snapshot;
+
+    private int queuedAdditions;
+    private int queuedRemovals;
+
+    /**
+     * Creates a new light engine.
+     * @param budgetNanos the maximum amount of time a single light job can run for, in nanoseconds.
+     */
+    public LightEngine(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Light Engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Publishes the result of the last light job and starts a new one if there is anything left to do.
+     * Does nothing if the last job is still running. Must be called from the render thread.
+     * @param chunks the loaded chunks. The collection must not change, a new one is passed when the chunks change.
+     */
+    public void update(Collection<Chunk> chunks) {
+
+        if (job != null) {
+
+            if (!job.isDone()) {
+                return;
+            }
+
+            try {
+                job.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException(ex);
+            }
+
+            job = null;
+        }
+
+        // the light thread is idle, so we own every buffer and queue until the next job is submitted.
+        if (chunks != snapshotSource) {
+            snapshotSource = chunks;
+            snapshot = new ChunkMap(chunks);
+        }
+
+        queuedAdditions = 0;
+        queuedRemovals = 0;
+
+        boolean hasWork = false;
+
+        for (Chunk chunk : chunks) {
+
+            chunk.swapLightBuffers();
+            chunk.updateLightSolidity();
+            chunk.applyPendingLight();
+
+            // light queued in a chunk at the edge of the loaded chunks waits there until its other neighbor loads.
+            if (!LightPropagation.hasNeighbors(snapshot, chunk)) {
+                continue;
+            }
+
+            queuedAdditions += chunk.getLightAdditions().size();
+            queuedRemovals += chunk.getLightRemovals().size();
+
+            hasWork |= chunk.hasQueuedLight();
+        }
+
+        if (hasWork) {
+            ChunkMap chunkMap = snapshot;
+            job = executor.submit(() -> propagate(chunkMap));
+        }
+    }
+
+    /**
+     * Gets the amount of light additions that were waiting to be processed when the last job was submitted.
+     * @return the amount of queued light additions.
+     */
+    public int getQueuedAdditions() {
+        return queuedAdditions;
+    }
+
+    /**
+     * Gets the amount of light removals that were waiting to be processed when the last job was submitted.
+     * @return the amount of queued light removals.
+     */
+    public int getQueuedRemovals() {
+        return queuedRemovals;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void propagate(ChunkMap chunks) {
+        new LightPropagation(chunks, System.nanoTime() + budgetNanos, true).run();
+    }
+
+}
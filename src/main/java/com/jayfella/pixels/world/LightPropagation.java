@@ -0,0 +1,234 @@
+package com.jayfella.pixels.world;
+
+import com.jayfella.pixels.core.WorldConstants;
+import com.jayfella.pixels.grid.ChunkMap;
+import com.jayfella.pixels.tile.light.LightQueue;
+
+import java.util.Collection;
+
+/**
+ * A single run of the light flood-fill over a set of chunks, writing into their back light buffers.
+ * Each light channel spreads on its own, so a node only ever changes the channel it was queued for.
+ *
+ * Every removal is processed before any addition so that light from a removed source is cleared before the remaining
+ * sources fill the hole back in. Light never spreads into a chunk that is not in the given set.
+ *
+ * This class is not thread-safe. Each run must only be used by one thread.
+ */
+class LightPropagation {
+
+    // how many nodes are processed between checking the deadline.
+    private static final int NODES_PER_TIME_CHECK = 256;
+
+    private final ChunkMap chunks;
+    private final long deadline;
+    private final boolean requireNeighbors;
+
+    private int nodesUntilTimeCheck = NODES_PER_TIME_CHECK;
+
+    /**
+     * Creates a new propagation run.
+     * @param chunks           the chunks light can spread through, by grid position.
+     * @param deadline         the value of System.nanoTime() to stop at.
+     * @param requireNeighbors only spread light from a chunk if both of its neighbors are in the set.
+     */
+    LightPropagation(ChunkMap chunks, long deadline, boolean requireNeighbors) {
+        this.chunks = chunks;
+        this.deadline = deadline;
+        this.requireNeighbors = requireNeighbors;
+    }
+
+    /**
+     * Processes the light queues of the chunks until they are empty or the deadline has passed.
+     * @return true if all of the queues that can be processed are empty.
+     */
+    boolean run() {
+
+        Collection<Chunk> chunks = this.chunks.values();
+
+        // a chunk can push nodes into its neighbors, so keep going until nothing is left.
+        boolean worked = true;
+
+        while (worked) {
+
+            worked = false;
+
+            for (Chunk chunk : chunks) {
+
+                if (canPropagate(chunk) && !chunk.getLightRemovals().isEmpty()) {
+
+                    if (!processRemovals(chunk)) {
+                        return false;
+                    }
+
+                    worked = true;
+                }
+            }
+        }
+
+        worked = true;
+
+        while (worked) {
+
+            worked = false;
+
+            for (Chunk chunk : chunks) {
+
+                if (canPropagate(chunk) && !chunk.getLightAdditions().isEmpty()) {
+
+                    if (!processAdditions(chunk)) {
+                        return false;
+                    }
+
+                    worked = true;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private boolean canPropagate(Chunk chunk) {
+        return !requireNeighbors || hasNeighbors(chunks, chunk);
+    }
+
+    /**
+     * Determines whether or not both neighbors of a chunk are in a set of chunks.
+     * @param chunks the set of chunks.
+     * @param chunk  the chunk to check.
+     * @return true if the chunks on the left and right of the chunk are in the set.
+     */
+    static boolean hasNeighbors(ChunkMap chunks, Chunk chunk) {
+        return chunks.containsKey(chunk.getGridPosition() - 1) && chunks.containsKey(chunk.getGridPosition() + 1);
+    }
+
+    private boolean hasTimeLeft() {
+
+        if (--nodesUntilTimeCheck > 0) {
+            return true;
+        }
+
+        nodesUntilTimeCheck = NODES_PER_TIME_CHECK;
+        return System.nanoTime() < deadline;
+    }
+
+    private boolean processAdditions(Chunk chunk) {
+
+        LightQueue queue = chunk.getLightAdditions();
+
+        while (!queue.isEmpty()) {
+
+            int node = queue.poll();
+
+            int x = LightQueue.getX(node);
+            int y = LightQueue.getY(node);
+            int channel = LightQueue.getChannel(node);
+
+            // the light may have changed since the node was queued, so always spread the current value.
+            int light = chunk.getBackLight(x, y, channel);
+
+            if (light > 1) {
+                spreadLight(chunk, x - 1, y, channel, light);
+                spreadLight(chunk, x + 1, y, channel, light);
+                spreadLight(chunk, x, y - 1, channel, light);
+                spreadLight(chunk, x, y + 1, channel, light);
+            }
+
+            if (!hasTimeLeft()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void spreadLight(Chunk chunk, int x, int y, int channel, int light) {
+
+        if (y < 0 || y >= WorldConstants.MAX_HEIGHT) {
+            return;
+        }
+
+        chunk = resolveChunk(chunk, x);
+
+        if (chunk == null) {
+            return;
+        }
+
+        x &= WorldConstants.CELL_SIZE - 1;
+
+        // light loses more strength travelling into a solid block than it does through air.
+        int neighborLight = chunk.isLightSolid(x, y) ? light - 2 : light - 1;
+
+        if (chunk.getBackLight(x, y, channel) < neighborLight) {
+            chunk.setBackLight(x, y, channel, neighborLight);
+            chunk.getLightAdditions().push(x, y, neighborLight, channel);
+        }
+    }
+
+    private boolean processRemovals(Chunk chunk) {
+
+        LightQueue queue = chunk.getLightRemovals();
+
+        while (!queue.isEmpty()) {
+
+            int node = queue.poll();
+
+            int x = LightQueue.getX(node);
+            int y = LightQueue.getY(node);
+            int light = LightQueue.getLight(node);
+            int channel = LightQueue.getChannel(node);
+
+            removeLight(chunk, x - 1, y, channel, light);
+            removeLight(chunk, x + 1, y, channel, light);
+            removeLight(chunk, x, y - 1, channel, light);
+            removeLight(chunk, x, y + 1, channel, light);
+
+            if (!hasTimeLeft()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void removeLight(Chunk chunk, int x, int y, int channel, int light) {
+
+        if (y < 0 || y >= WorldConstants.MAX_HEIGHT) {
+            return;
+        }
+
+        chunk = resolveChunk(chunk, x);
+
+        if (chunk == null) {
+            return;
+        }
+
+        x &= WorldConstants.CELL_SIZE - 1;
+
+        int neighborLight = chunk.getBackLight(x, y, channel);
+
+        if (neighborLight != 0 && neighborLight < light) {
+            // this light came from the removed light, so remove it too.
+            chunk.setBackLight(x, y, channel, 0);
+            chunk.getLightRemovals().push(x, y, neighborLight, channel);
+        }
+        else if (neighborLight >= light) {
+            // this light comes from another source, so it needs to fill the hole we're leaving.
+            chunk.getLightAdditions().push(x, y, neighborLight, channel);
+        }
+    }
+
+    // returns the chunk that contains the given local x coordinate, which may be one block outside of the given chunk.
+    private Chunk resolveChunk(Chunk chunk, int x) {
+
+        if (x < 0) {
+            return chunks.get(chunk.getGridPosition() - 1);
+        }
+        else if (x >= WorldConstants.CELL_SIZE) {
+            return chunks.get(chunk.getGridPosition() + 1);
+        }
+
+        return chunk;
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.jayfella.pixels.world;
+
+import com.jayfella.pixels.core.FrameBudget;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the meshes of chunk cells on the world thread pool.
+ *
+ * Cells are marked as dirty when their blocks change. A dirty cell is only queued once no matter how many times it
+ * changes, so a large edit only rebuilds each cell once. The mesh is built from a copy of the block data of the cell,
+ * and the version of the cell is recorded when the copy is taken. If the cell has changed again by the time the mesh
+ * is finished the mesh is thrown away and the cell is built again.
+ *
+ * Attaching finished meshes and copying cells to build is limited to a slice of each frame. Whatever doesn't fit is
+ * left for the next frame.
+ *
+ * Every method must be called from the render thread.
+ */
+public class MeshScheduler {
+
+    // the fraction of each frame spent attaching and submitting meshes.
+    private static final float FRAME_BUDGET = 0.1f;
+
+    private final World world;
+    private final ChunkGenerator chunkGenerator;
+    private final FrameBudget.Slice frameBudget;
+
+    // cells that need a new mesh.
+    private final Set<ChunkCell> dirtyCells = new LinkedHashSet<>();
+
+    // cells that currently have a mesh being built.
+    private final Map<ChunkCell, MeshJob> buildingCells = new HashMap<>();
+
+    public MeshScheduler(World world) {
+        this.world = world;
+        this.chunkGenerator = world.getChunkGenerator();
+        this.frameBudget = world.getFrameBudget().createSlice("Meshes");
+    }
+
+    /**
+     * Queues the mesh of the given cell to be rebuilt.
+     * @param chunkCell the cell that has changed.
+     */
+    public void requestMesh(ChunkCell chunkCell) {
+        dirtyCells.add(chunkCell);
+    }
+
+    /**
+     * Gets the amount of cells that are waiting for a new mesh, including those that are being built.
+     * @return the amount of cells waiting for a new mesh.
+     */
+    public int getPendingCount() {
+        return dirtyCells.size() + buildingCells.size();
+    }
+
+    public void update() {
+
+        frameBudget.begin(FRAME_BUDGET);
+
+        // attach any meshes that have finished.
+        Iterator<Map.Entry<ChunkCell, MeshJob>> iterator = buildingCells.entrySet().iterator();
+
+        while (iterator.hasNext() && frameBudget.hasTime()) {
+
+            Map.Entry<ChunkCell, MeshJob> entry = iterator.next();
+            MeshJob job = entry.getValue();
+
+            if (job.future.isDone()) {
+
+                Mesh mesh;
+
+                try {
+                    mesh = job.future.get();
+                } catch (InterruptedException | ExecutionException ex) {
+                    throw new RuntimeException(ex);
+                }
+
+                applyMesh(entry.getKey(), job.version, mesh);
+                iterator.remove();
+            }
+        }
+
+        // start building the cells that have changed.
+        Iterator<ChunkCell> dirtyIterator = dirtyCells.iterator();
+
+        while (dirtyIterator.hasNext() && frameBudget.hasTime()) {
+
+            ChunkCell chunkCell = dirtyIterator.next();
+
+            // an older version of this cell is still being built. Wait for it to finish so the meshes are applied in order.
+            if (buildingCells.containsKey(chunkCell)) {
+                continue;
+            }
+
+            dirtyIterator.remove();
+
+            if (chunkCell.getChunk().isDestroyed()) {
+                continue;
+            }
+
+            ChunkCell snapshot = chunkCell.snapshot();
+            Future<Mesh> future = world.getThreadPool().submit(() -> chunkGenerator.generateSpriteSheetMesh(snapshot));
+
+            buildingCells.put(chunkCell, new MeshJob(snapshot.getVersion(), future));
+        }
+
+        frameBudget.end();
+    }
+
+    private void applyMesh(ChunkCell chunkCell, int version, Mesh mesh) {
+
+        // the chunk was unloaded while the mesh was being built.
+        if (chunkCell.getChunk().isDestroyed()) {
+            chunkGenerator.releaseMesh(mesh);
+            return;
+        }
+
+        // the cell changed while the mesh was being built, so build it again.
+        if (chunkCell.getVersion() != version) {
+            chunkGenerator.releaseMesh(mesh);
+            dirtyCells.add(chunkCell);
+            return;
+        }
+
+        Geometry geometry = chunkCell.getGeometry();
+
+        if (geometry != null) {
+
+            Mesh oldMesh = geometry.getMesh();
+
+            if (mesh.getVertexCount() > 0) {
+                geometry.setMesh(mesh);
+            }
+            else {
+                geometry.removeFromParent();
+                chunkCell.setGeometry(null);
+            }
+
+            // the old mesh is no longer used, so its buffers can be re-used.
+            chunkGenerator.releaseMesh(oldMesh);
+        }
+        else if (mesh.getVertexCount() > 0) {
+
+            geometry = chunkGenerator.createGeometry(chunkCell, mesh);
+            chunkCell.setGeometry(geometry);
+            chunkCell.getChunk().getChunkNode().attachChild(geometry);
+        }
+    }
+
+    private static class MeshJob {
+
+        private final int version;
+        private final Future<Mesh> future;
+
+        private MeshJob(int version, Future<Mesh> future) {
+            this.version = version;
+            this.future = future;
+        }
+    }
+
+}
@@ -1,7 +1,9 @@
 package com.jayfella.pixels.world;
 
+import com.jayfella.pixels.core.FrameBudget;
 import com.jayfella.pixels.core.NoiseEvaluator;
 import com.jayfella.pixels.grid.SceneGrid;
+import com.jayfella.pixels.grid.collision.SceneCollisionGrid;
 import com.jayfella.pixels.player.Player;
 import com.jayfella.pixels.tile.Block;
 import com.jayfella.pixels.world.settings.WorldSettings;
@@ -19,17 +21,21 @@ public interface World {
     Node getWorldNode();
 
     SceneGrid getSceneGrid();
+    SceneCollisionGrid getCollisionGrid();
 
     Material getWorldMaterial();
 
     ExecutorService getThreadPool();
+    FrameBudget getFrameBudget();
     NoiseEvaluator getWorldNoiseEvaluator();
 
     Application getApplication();
     Player getPlayer();
 
     ChunkGenerator getChunkGenerator();
+    MeshScheduler getMeshScheduler();
 
+    BlockEdit beginEdit();
     void addBlock(int type, Vector2f... worldLocations);
     void deleteBlock(Vector2f... worldLocations);
 
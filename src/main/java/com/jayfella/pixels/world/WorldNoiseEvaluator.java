@@ -4,6 +4,8 @@ import com.jayfella.fastnoise.FastNoise;
 import com.jayfella.pixels.core.NoiseEvaluator;
 import com.jayfella.pixels.core.WorldConstants;
 
+import java.util.Arrays;
+
 public class WorldNoiseEvaluator implements NoiseEvaluator {
 
     private final FastNoise fastNoise;
@@ -48,6 +50,40 @@ public class WorldNoiseEvaluator implements NoiseEvaluator {
 
     }
 
+    @Override
+    public void evaluateRegion(int x0, int y0, int width, int height, float[] out) {
+
+        for (int y = 0; y < height; y++) {
+
+            int posY = y0 + y;
+            int rowStart = y * width;
+
+            // the height gradient is the same for the whole row, so we only need to check it once.
+            // anything above the gradient band is air, so there's no need to sample the noise at all.
+            if (posY > WorldConstants.MAX_HEIGHT - 1 || posY > 200) {
+                Arrays.fill(out, rowStart, rowStart + width, 0);
+            }
+
+            // anything below the gradient band is unaffected by it.
+            else if (posY < 180) {
+                for (int x = 0; x < width; x++) {
+                    out[rowStart + x] = normalize(fastNoise.GetNoise(x0 + x, posY));
+                }
+            }
+
+            else {
+
+                float heightGradient = heightGradient(posY);
+
+                for (int x = 0; x < width; x++) {
+                    out[rowStart + x] = normalize(fastNoise.GetNoise(x0 + x, posY)) * heightGradient;
+                }
+            }
+
+        }
+
+    }
+
     // create a gradient map that has a "gap" at the very top.
     // this stops the world from generating at the top of the world.
 
@@ -1,11 +1,12 @@
 package com.jayfella.pixels.world;
 
 import com.jayfella.pixels.core.CellSize;
-import com.jayfella.pixels.core.GridPos2i;
+import com.jayfella.pixels.core.FrameBudget;
 import com.jayfella.pixels.core.NoiseEvaluator;
 import com.jayfella.pixels.core.WorldConstants;
 import com.jayfella.pixels.grid.SceneGrid;
 import com.jayfella.pixels.grid.collision.SceneCollisionGrid;
+import com.jayfella.pixels.grid.collision.TileCollisionControl;
 import com.jayfella.pixels.grid.settings.GridSettings;
 import com.jayfella.pixels.physics.Dyn4jAppState;
 import com.jayfella.pixels.player.Player;
@@ -20,8 +21,7 @@ import com.jme3.asset.TextureKey;
 import com.jme3.material.Material;
 import com.jme3.material.RenderState;
 import com.jme3.math.Vector2f;
-import com.jme3.scene.Geometry;
-import com.jme3.scene.Mesh;
+import com.jme3.renderer.Renderer;
 import com.jme3.scene.Node;
 import com.jme3.texture.Image;
 import com.jme3.texture.Texture;
@@ -36,23 +36,35 @@ import java.util.concurrent.Executors;
 
 public class WorldState extends BaseAppState implements World {
 
+    // the maximum amount of time a light job spends spreading light before its results are shown.
+    private static final long LIGHT_BUDGET_NANOS = 4_000_000L;
+
+    // the frame rate the frame budget is measured against, and the fraction of each frame spent uploading light.
+    private static final int TARGET_FPS = 60;
+    private static final float LIGHT_UPLOAD_FRAME_BUDGET = 0.05f;
 
     private final WorldSettings worldSettings;
     private final Node worldNode;
     private final Player player;
 
     private final ExecutorService threadPool;
+    private final FrameBudget frameBudget;
+    private final FrameBudget.Slice lightUploadBudget;
     private final NoiseEvaluator worldNoiseEvaluator;
 
     private final SceneGrid sceneGrid;
     private SceneCollisionGrid collisionGrid;
+    private TileCollisionControl tileCollisionControl;
 
     private ChunkGenerator chunkGenerator;
+    private LightEngine lightEngine;
+    private MeshScheduler meshScheduler;
     private Material worldMaterial;
 
     private Container debugContainer;
     private Label lightAdditionsLabel;
     private Label lightRemovalsLabel;
+    private Label frameBudgetLabel;
 
     public WorldState(WorldSettings worldSettings, NoiseEvaluator worldNoiseEvaluator, Player player) {
         this.worldSettings = worldSettings;
@@ -64,6 +76,9 @@ public class WorldState extends BaseAppState implements World {
         worldNode = new Node("World: " + worldSettings.getName());
         threadPool = Executors.newFixedThreadPool(worldSettings.getNumThreads());
 
+        frameBudget = new FrameBudget(TARGET_FPS);
+        lightUploadBudget = frameBudget.createSlice("Light");
+
         GridSettings terrainSettings = new GridSettings();
         terrainSettings.setViewDistance(3);
         this.sceneGrid = new SceneGrid(this, terrainSettings);
@@ -84,6 +99,11 @@ public class WorldState extends BaseAppState implements World {
         return sceneGrid;
     }
 
+    @Override
+    public SceneCollisionGrid getCollisionGrid() {
+        return collisionGrid;
+    }
+
     @Override
     public Material getWorldMaterial() {
         return worldMaterial;
@@ -94,6 +114,11 @@ public class WorldState extends BaseAppState implements World {
         return threadPool;
     }
 
+    @Override
+    public FrameBudget getFrameBudget() {
+        return frameBudget;
+    }
+
     @Override
     public NoiseEvaluator getWorldNoiseEvaluator() {
         return worldNoiseEvaluator;
@@ -109,6 +134,11 @@ public class WorldState extends BaseAppState implements World {
         return chunkGenerator;
     }
 
+    @Override
+    public MeshScheduler getMeshScheduler() {
+        return meshScheduler;
+    }
+
     @Override
     protected void initialize(Application app) {
 
@@ -117,6 +147,8 @@ public class WorldState extends BaseAppState implements World {
         worldMaterial = createSpriteMaterial(app.getAssetManager());
 
         chunkGenerator = new ChunkGenerator(this);
+        lightEngine = new LightEngine(LIGHT_BUDGET_NANOS);
+        meshScheduler = new MeshScheduler(this);
 
         Dyn4jAppState dyn4jAppState = getState(Dyn4jAppState.class);
 
@@ -124,13 +156,19 @@ public class WorldState extends BaseAppState implements World {
         gridSettings.setCellSize(CellSize.Size_8);
         gridSettings.setViewDistance(2);
 
+        // collision cells are only built around the entities added to the grid. The player isn't one of them, because it
+        // collides with the blocks directly.
         collisionGrid = new SceneCollisionGrid(this, dyn4jAppState.getPhysicsSpace(), gridSettings);
 
+        tileCollisionControl = new TileCollisionControl(this, player.getRigidBodyControl2D(), Player.WIDTH, Player.HEIGHT);
+        player.getModel().addControl(tileCollisionControl);
+
         worldNode.attachChild(player.getModel());
 
         debugContainer = new Container();
         lightAdditionsLabel = debugContainer.addChild(new Label(""));
         lightRemovalsLabel = debugContainer.addChild(new Label(""));
+        frameBudgetLabel = debugContainer.addChild(new Label(""));
 
 
 
@@ -139,6 +177,7 @@ public class WorldState extends BaseAppState implements World {
 
     @Override protected void cleanup(Application app) {
         collisionGrid.destroy();
+        lightEngine.shutdown();
     }
 
     @Override protected void onEnable() {
@@ -147,7 +186,7 @@ public class WorldState extends BaseAppState implements World {
 
         Dyn4jAppState dyn4jAppState = getState(Dyn4jAppState.class);
         dyn4jAppState.getPhysicsSpace().add(player.getRigidBodyControl2D());
-        collisionGrid.addEntity(player);
+        tileCollisionControl.setPhysicsSpace(dyn4jAppState.getPhysicsSpace());
 
         // player inventory
         PlayerInventoryGuiState inventoryGuiState = new PlayerInventoryGuiState(player);
@@ -156,44 +195,24 @@ public class WorldState extends BaseAppState implements World {
 
     @Override protected void onDisable() {
         worldNode.removeFromParent();
+        tileCollisionControl.setPhysicsSpace(null);
     }
 
     @Override
     public void update(float tpf) {
 
+        frameBudget.update(tpf);
+
         sceneGrid.setLocation(player.getLocation());
         sceneGrid.update(tpf);
 
         collisionGrid.update(tpf);
 
-        int lightRemovalsTotal = 0;
-        int lightAdditionsTotal = 0;
-
-        for (Chunk chunk : sceneGrid.getLoadedChunks()) {
-
-            // The lighting system flood fills light. Sometimes that spreads to neighboring chunks.
-            // It will however, only spread to its neighboring chunk, so only begin the flood-fill IF
-            // both neighbors are loaded.
-
-            // If neighboring chunks on either side are loaded, apply lighting.
-            // We're doing it frame-by-frame. One lighting calculation per frame.
-            // We could limit the calculations per-frame to speed it up vs "jittering" due to the time it takes.
-            // But for now, one calc per frame lets us "see" that it's working properly.
-            if (sceneGrid.getChunk(chunk.getGridPosition() -1) != null && sceneGrid.getChunk(chunk.getGridPosition() +1) != null) {
-
-                chunkGenerator.applyLightRemovals(chunk);
-
-                int lightRemovals = chunk.getLightRemovalBfsQueue().size();
-                lightRemovalsTotal += lightRemovals;
-
-                if (lightRemovals == 0) {
-                    chunkGenerator.applyLightAdditions(chunk);
-                }
+        // attach any cell meshes that have finished building and start building the cells that changed.
+        meshScheduler.update();
 
-                int lightAdditions = chunk.getLightBfsQueue().size();
-                lightAdditionsTotal += lightAdditions;
-            }
-        }
+        // show the light that has been calculated since the last frame and hand over any new light changes.
+        lightEngine.update(sceneGrid.getLoadedChunks());
 
         // debug info
         debugContainer.setLocalTranslation(
@@ -202,184 +221,62 @@ public class WorldState extends BaseAppState implements World {
                 0
         );
 
-        lightAdditionsLabel.setText("Light Additions: " + lightAdditionsTotal);
-        lightRemovalsLabel.setText("Light Removals: " + lightRemovalsTotal);
-
-    }
-
-    private void regenMesh(ChunkCell cell) {
+        // upload the light textures that changed. Chunks that don't fit in this frame are uploaded in the next one.
+        Renderer renderer = getApplication().getRenderer();
 
+        lightUploadBudget.begin(LIGHT_UPLOAD_FRAME_BUDGET);
 
-        if (cell.getGeometry() != null) {
-            Mesh mesh = chunkGenerator.generateSpriteSheetMesh(cell);
+        for (Chunk chunk : sceneGrid.getLoadedChunks()) {
 
-            if (mesh.getVertexCount() > 0) {
-                cell.getGeometry().setMesh(mesh);
-            }
-            else {
-                cell.getGeometry().removeFromParent();
-                cell.setGeometry(null);
+            if (!lightUploadBudget.hasTime()) {
+                break;
             }
-        }
-        else {
-            Geometry geometry = chunkGenerator.generateGeometry(cell);
-            cell.setGeometry(geometry);
 
-            if (geometry != null) {
-                cell.getChunk().getChunkNode().attachChild(geometry);
-            }
+            chunk.flushLightUpdates(renderer);
         }
 
-    }
-
-    private void regenNeighborMeshesIfRequired(ChunkCell cell, int localX, int localY) {
-
-        // update the cell below, same chunk.
-        if (localY == 0) {
+        lightUploadBudget.end();
 
-            if (cell.getCellIndex() > 0) {
-                ChunkCell lowerCell = cell.getChunk().getCell(cell.getCellIndex() - 1);
-                regenMesh(lowerCell);
-            }
-
-        }
+        lightAdditionsLabel.setText("Light Additions: " + lightEngine.getQueuedAdditions());
+        lightRemovalsLabel.setText("Light Removals: " + lightEngine.getQueuedRemovals());
 
-        // update the cell able, same chunk.
-        else if (localY == WorldConstants.CELL_SIZE - 1) {
+        StringBuilder frameBudgetText = new StringBuilder("Frame Budget (ms):");
 
-            if (cell.getCellIndex() < WorldConstants.CELL_COUNT_Y - 1) {
-                ChunkCell upperCell = cell.getChunk().getCell(cell.getCellIndex() + 1);
-                regenMesh(upperCell);
-            }
+        for (FrameBudget.Slice slice : frameBudget.getSlices()) {
+            frameBudgetText.append(String.format(" %s %.2f/%.2f", slice.getName(), slice.getSpentNanos() / 1_000_000f, slice.getAllowanceNanos() / 1_000_000f));
         }
 
-        // update the chunk to the left, same cell index.
-        if (localX == 0) {
-
-            Chunk chunkLeft = sceneGrid.getChunk(cell.getChunk().getGridPosition() - 1);
-
-            if (chunkLeft != null) {
-
-                ChunkCell leftCell = chunkLeft.getCell(cell.getCellIndex());
-                regenMesh(leftCell);
-
-                // update the chunk to the left, lower cell.
-                if (localY == 0) {
+        frameBudgetLabel.setText(frameBudgetText.toString());
 
-                    if (cell.getCellIndex() > 0) {
-                        ChunkCell leftLowerCell = chunkLeft.getCell(cell.getCellIndex() - 1);
-                        regenMesh(leftLowerCell);
-                    }
-
-                }
-                // update the chunk to the left, upper cell.
-                else if (localY == WorldConstants.CELL_SIZE - 1) {
-
-                    if (cell.getCellIndex() < WorldConstants.CELL_COUNT_Y - 1) {
-                        ChunkCell leftUpperCell = chunkLeft.getCell(cell.getCellIndex() + 1);
-                        regenMesh(leftUpperCell);
-                    }
-
-                }
-            }
-
-        }
-
-        // update the chunk to the right, same cell index.
-        else if (localX == WorldConstants.CELL_SIZE - 1) {
-
-            Chunk chunkRight = sceneGrid.getChunk(cell.getChunk().getGridPosition() + 1);
-
-            if (chunkRight != null) {
-                ChunkCell rightCell = chunkRight.getCell(cell.getCellIndex());
-                regenMesh(rightCell);
-
-                // update the chunk to the right, lower cell.
-                if (localY == 0) {
-
-                    if (cell.getCellIndex() > 0) {
-                        ChunkCell rightLowerCell = chunkRight.getCell(cell.getCellIndex() - 1);
-                        regenMesh(rightLowerCell);
-                    }
-
-                }
-                // update the chunk to the right, upper cell.
-                else if (localY == WorldConstants.CELL_SIZE - 1) {
-
-                    if (cell.getCellIndex() < WorldConstants.CELL_COUNT_Y - 1) {
-                        ChunkCell rightUpperCell = chunkRight.getCell(cell.getCellIndex() + 1);
-                        regenMesh(rightUpperCell);
-                    }
-
-                }
-
-            }
-
-        }
+    }
 
+    @Override
+    public BlockEdit beginEdit() {
+        return new BlockEdit(sceneGrid, meshScheduler, collisionGrid);
     }
 
     @Override
     public void addBlock(int type, Vector2f... worldLocations) {
 
-        for (Vector2f loc : worldLocations) {
-
-            int xGrid = (int)loc.x >> WorldConstants.GRID_BITSHIFT;
-            int localX = (int)loc.x - (xGrid << WorldConstants.GRID_BITSHIFT);
-
-            int cellY = (int)loc.y >> WorldConstants.GRID_BITSHIFT;
-            int localY = (int)loc.y - (cellY << WorldConstants.GRID_BITSHIFT);
-
-            Chunk chunk = sceneGrid.getChunk(xGrid);
-            ChunkCell cell = chunk.getCell(cellY);
-
-            chunk.addBlock(localX, (int)loc.y, type);
+        BlockEdit edit = beginEdit();
 
-            regenMesh(cell);
-            // depending on the block we've changed, we might need to also regen the neighbor cell(s).
-            regenNeighborMeshesIfRequired(cell, localX, localY);
-
-            // collision grid
-            refreshLoadedCollisionCell(loc);
+        for (Vector2f loc : worldLocations) {
+            edit.addBlock(type, loc);
         }
 
-    }
-
-    private void refreshLoadedCollisionCell(Vector2f worldLocation) {
-
-        // int xGridCollisionCell = (int)worldLocation.x >> collisionGrid.getGridSettings().getCellSize().getBitshift();
-        // int yGridCollisionCell = (int)worldLocation.y >> collisionGrid.getGridSettings().getCellSize().getBitshift();
-
-        // GridPos2i collisionCellGridPos = new GridPos2i(xGridCollisionCell, yGridCollisionCell, collisionGrid.getGridSettings().getCellSize().getBitshift());
-
-        GridPos2i collisionCellGridPos = GridPos2i.fromWorldLocation(worldLocation, collisionGrid.getGridSettings().getCellSize().getBitshift());
-        collisionGrid.refreshLoadedCell(collisionCellGridPos);
+        edit.commit();
     }
 
     @Override
     public void deleteBlock(Vector2f... worldLocations) {
 
-        for (Vector2f loc : worldLocations) {
-
-            int gridX = (int)loc.x >> WorldConstants.GRID_BITSHIFT;
-            int localX = (int)loc.x - (gridX << WorldConstants.GRID_BITSHIFT);
-
-            int cellY = (int)loc.y >> WorldConstants.GRID_BITSHIFT;
-            int localY = (int)loc.y - (cellY << WorldConstants.GRID_BITSHIFT);
+        BlockEdit edit = beginEdit();
 
-            Chunk chunk = sceneGrid.getChunk(gridX);
-            ChunkCell cell = chunk.getCell(cellY);
-
-            chunk.removeBlock(localX, (int)loc.y);
-
-            regenMesh(cell);
-            // depending on the block we've changed, we might need to also regen the neighbor cell(s).
-            regenNeighborMeshesIfRequired(cell, localX, localY);
-
-            // collision grid
-            refreshLoadedCollisionCell(loc);
+        for (Vector2f loc : worldLocations) {
+            edit.deleteBlock(loc);
         }
 
+        edit.commit();
     }
 
     private Material createWangMaterial(AssetManager assetManager) {
@@ -437,6 +334,7 @@ public class WorldState extends BaseAppState implements World {
         dirtTexture.setMinFilter(Texture.MinFilter.NearestNoMipMaps);
 
         material.setTexture("DirtTexture", dirtTexture);
+        material.setFloat("TileSize", ChunkGenerator.SPRITE_SHEET_TILE_SIZE);
 
         return material;
     }
@@ -1,19 +1,27 @@
 #import "Common/ShaderLib/GLSLCompat.glsllib"
 
 uniform sampler2D m_DirtTexture;
+uniform sampler2D m_LightMap;
+uniform float m_TileSize;
 
 varying vec2 texCoord;
 varying vec3 voxelData;
-// varying vec3 worldCoord;
+varying vec3 worldCoord;
 
 void main(){
 
     // the ID corresponds to which texture we want, so we have to do a col/row index.
-    vec4 color = texture2DArray(m_DirtTexture, texCoord);
+    // texCoord is the corner of the tile, which is repeated once per block so a quad can cover many blocks.
+    vec2 tileCoord = texCoord + fract(worldCoord.xy) * m_TileSize;
+    vec4 color = texture2DArray(m_DirtTexture, tileCoord);
 
-    // multiply the color by the sunlight value.
-    // for torches we want the max(sunlight, torch) so the brightest value "wins".
-    color.rgb *= voxelData.z;
+    // the light map covers one chunk, 16 blocks wide and 256 blocks high, with one texel per block.
+    vec2 lightCoord = vec2(mod(worldCoord.x, 16.0) / 16.0, worldCoord.y / 256.0);
+    vec4 light = texture2D(m_LightMap, lightCoord);
+
+    // multiply the color by the light value. rgb is colored light and alpha is sunlight.
+    // we want the max(sunlight, torch) so the brightest value "wins".
+    color.rgb *= max(vec3(light.a), light.rgb);
 
     gl_FragColor = color;
 }
\ No newline at end of file
@@ -9,7 +9,7 @@ attribute vec3 inTexCoord2;
 
 varying vec2 texCoord;
 varying vec3 voxelData;
-// varying vec3 worldCoord;
+varying vec3 worldCoord;
 
 void main(){
 
@@ -17,7 +17,7 @@ void main(){
 
     texCoord = inTexCoord;
     voxelData = inTexCoord2;
-    // worldCoord = (g_WorldMatrix * modelSpacePos).xyz;
+    worldCoord = (g_WorldMatrix * modelSpacePos).xyz;
     gl_Position = TransformWorldViewProjection(modelSpacePos);;
 
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.jayfella.pixels.grid;
+
+import com.jayfella.pixels.world.Chunk;
+import com.jayfella.pixels.world.StubWorld;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkMapTest {
+
+    private StubWorld world;
+
+    @Before
+    public void setUp() {
+        // the chunks are only needed for their grid positions, so the world is empty.
+        world = new StubWorld((x, y) -> 0);
+    }
+
+    private Chunk chunk(int gridX) {
+        return new Chunk(gridX, world);
+    }
+
+    @Test
+    public void chunksAreFoundByTheirGridPosition() {
+
+        ChunkMap map = new ChunkMap();
+        Chunk first = chunk(-3);
+        Chunk second = chunk(5);
+
+        map.put(first);
+        map.put(second);
+
+        assertSame(first, map.get(-3));
+        assertSame(second, map.get(5));
+        assertNull(map.get(0));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void puttingAChunkAtTheSameGridPositionReplacesIt() {
+
+        ChunkMap map = new ChunkMap();
+        Chunk replaced = chunk(2);
+        Chunk replacement = chunk(2);
+
+        map.put(replaced);
+        map.put(replacement);
+
+        assertSame(replacement, map.get(2));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void chunksAfterARemovedChunkAreStillFound() {
+
+        // more chunks than the smallest table has slots, so some of them share a probe sequence.
+        List<Chunk> chunks = new ArrayList<>();
+        ChunkMap map = new ChunkMap();
+
+        for (int gridX = -20; gridX < 20; gridX++) {
+            Chunk chunk = chunk(gridX);
+            chunks.add(chunk);
+            map.put(chunk);
+        }
+
+        // remove every third chunk, so the probes of the others cross the removed slots.
+        for (int gridX = -20; gridX < 20; gridX += 3) {
+            assertSame(chunks.get(gridX + 20), map.remove(gridX));
+        }
+
+        for (int gridX = -20; gridX < 20; gridX++) {
+
+            if ((gridX + 20) % 3 == 0) {
+                assertFalse(map.containsKey(gridX));
+            }
+            else {
+                assertSame(chunks.get(gridX + 20), map.get(gridX));
+            }
+        }
+
+        assertEquals(40 - 14, map.size());
+        assertNull(map.remove(-20));
+    }
+
+    @Test
+    public void theValuesDoNotChangeWhenTheMapIsModified() {
+
+        ChunkMap map = new ChunkMap();
+        map.put(chunk(0));
+
+        Collection<Chunk> values = map.values();
+
+        map.put(chunk(1));
+        map.remove(0);
+
+        assertEquals(1, values.size());
+        assertEquals(0, values.iterator().next().getGridPosition());
+        assertTrue(map.containsKey(1));
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.jayfella.pixels.grid;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkWindowTest {
+
+    private final TreeSet<Integer> evicted = new TreeSet<>();
+    private final TreeSet<Integer> entered = new TreeSet<>();
+
+    private void moveTo(ChunkWindow window, int gridX) {
+        evicted.clear();
+        entered.clear();
+        window.moveTo(gridX, x -> assertTrue("evicted twice: " + x, evicted.add(x)), x -> assertTrue("entered twice: " + x, entered.add(x)));
+    }
+
+    private static TreeSet<Integer> range(int min, int max) {
+
+        TreeSet<Integer> range = new TreeSet<>();
+
+        for (int x = min; x <= max; x++) {
+            range.add(x);
+        }
+
+        return range;
+    }
+
+    @Test
+    public void theFirstMoveEntersTheWholeWindow() {
+
+        ChunkWindow window = new ChunkWindow(2);
+        moveTo(window, 0);
+
+        assertEquals(range(-2, 2), entered);
+        assertTrue(evicted.isEmpty());
+    }
+
+    @Test
+    public void movingByOneChunkSwapsOneGridPosition() {
+
+        ChunkWindow window = new ChunkWindow(2);
+        moveTo(window, 0);
+
+        moveTo(window, 1);
+        assertEquals(range(-2, -2), evicted);
+        assertEquals(range(3, 3), entered);
+
+        moveTo(window, 0);
+        assertEquals(range(3, 3), evicted);
+        assertEquals(range(-2, -2), entered);
+    }
+
+    @Test
+    public void movingAcrossZeroWrapsAroundTheSlots() {
+
+        ChunkWindow window = new ChunkWindow(2);
+        moveTo(window, 3);
+
+        // every slot is reused more than once on the way, with negative grid positions on the far side.
+        for (int gridX = 2; gridX >= -12; gridX--) {
+
+            moveTo(window, gridX);
+
+            assertEquals(range(gridX + 3, gridX + 3), evicted);
+            assertEquals(range(gridX - 2, gridX - 2), entered);
+
+            for (int x = gridX - 5; x <= gridX + 5; x++) {
+                assertEquals("grid position " + x, Math.abs(x - gridX) <= 2, window.contains(x));
+            }
+        }
+    }
+
+    @Test
+    public void jumpingPartOfTheWindowOnlySwapsTheLeadingEdge() {
+
+        ChunkWindow window = new ChunkWindow(2);
+        moveTo(window, 0);
+
+        moveTo(window, 3);
+        assertEquals(range(-2, 0), evicted);
+        assertEquals(range(3, 5), entered);
+
+        moveTo(window, -1);
+        assertEquals(range(2, 5), evicted);
+        assertEquals(range(-3, 0), entered);
+    }
+
+    @Test
+    public void jumpingFurtherThanTheWindowSwapsEveryGridPosition() {
+
+        ChunkWindow window = new ChunkWindow(2);
+        moveTo(window, 0);
+
+        // exactly the width of the window, so no grid position is shared but every slot lines up again.
+        moveTo(window, 5);
+        assertEquals(range(-2, 2), evicted);
+        assertEquals(range(3, 7), entered);
+
+        moveTo(window, -100);
+        assertEquals(range(3, 7), evicted);
+        assertEquals(range(-102, -98), entered);
+
+        assertTrue(window.contains(-100));
+        assertFalse(window.contains(5));
+    }
+
+    @Test
+    public void randomMovesMatchTheDifferenceOfTheWindows() {
+
+        Random random = new Random(11);
+        ChunkWindow window = new ChunkWindow(3);
+
+        int center = 0;
+        moveTo(window, center);
+
+        for (int i = 0; i < 500; i++) {
+
+            int gridX = center + random.nextInt(21) - 10;
+            moveTo(window, gridX);
+
+            TreeSet<Integer> before = range(center - 3, center + 3);
+            TreeSet<Integer> after = range(gridX - 3, gridX + 3);
+
+            TreeSet<Integer> expectedEvicted = new TreeSet<>(before);
+            expectedEvicted.removeAll(after);
+
+            TreeSet<Integer> expectedEntered = new TreeSet<>(after);
+            expectedEntered.removeAll(before);
+
+            assertEquals(expectedEvicted, evicted);
+            assertEquals(expectedEntered, entered);
+
+            TreeSet<Integer> contents = new TreeSet<>();
+            window.forEach(contents::add);
+            assertEquals(after, contents);
+
+            center = gridX;
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.jayfella.pixels.grid.collision;
+
+import com.jayfella.pixels.core.GridPos2i;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CellDemandTest {
+
+    private static final Object FIRST = "first";
+    private static final Object SECOND = "second";
+
+    private CellDemand demand;
+
+    private final Set<String> required = new HashSet<>();
+    private final Set<String> unneeded = new HashSet<>();
+
+    @Before
+    public void setUp() {
+        demand = new CellDemand(3);
+    }
+
+    private static String cell(int x, int y) {
+        return x + "," + y;
+    }
+
+    private static String cell(GridPos2i gridPos) {
+        return cell(gridPos.getX(), gridPos.getY());
+    }
+
+    // every cell of a rectangle, with exclusive maximums.
+    private static Set<String> cells(int minX, int minY, int maxX, int maxY) {
+
+        Set<String> cells = new HashSet<>();
+
+        for (int x = minX; x < maxX; x++) {
+            for (int y = minY; y < maxY; y++) {
+                cells.add(cell(x, y));
+            }
+        }
+
+        return cells;
+    }
+
+    private void setArea(Object owner, int minX, int minY, int maxX, int maxY) {
+        required.clear();
+        unneeded.clear();
+        demand.setArea(owner, minX, minY, maxX, maxY, gridPos -> required.add(cell(gridPos)), gridPos -> unneeded.add(cell(gridPos)));
+    }
+
+    private void removeArea(Object owner) {
+        required.clear();
+        unneeded.clear();
+        demand.removeArea(owner, gridPos -> unneeded.add(cell(gridPos)));
+    }
+
+    @Test
+    public void overlappingAreasOnlyReportTheCellsThatWereNotRequired() {
+
+        setArea(FIRST, 0, 0, 3, 3);
+        assertEquals(cells(0, 0, 3, 3), required);
+
+        setArea(SECOND, 2, 2, 5, 5);
+
+        Set<String> expected = cells(2, 2, 5, 5);
+        expected.remove(cell(2, 2));
+
+        assertEquals(expected, required);
+        assertTrue(unneeded.isEmpty());
+        assertEquals(9 + 8, demand.size());
+    }
+
+    @Test
+    public void movingAnAreaByOneCellOnlyReportsTheChange() {
+
+        setArea(FIRST, 0, 0, 3, 3);
+        setArea(FIRST, 1, 0, 4, 3);
+
+        assertEquals(cells(3, 0, 4, 3), required);
+        assertEquals(cells(0, 0, 1, 3), unneeded);
+        assertEquals(9, demand.size());
+
+        assertFalse(demand.isRequired(0, 1));
+        assertTrue(demand.isRequired(3, 1));
+    }
+
+    @Test
+    public void removingAnAreaOnlyReleasesTheCellsNoOtherOwnerNeeds() {
+
+        setArea(FIRST, 0, 0, 3, 3);
+        setArea(SECOND, 2, 0, 5, 3);
+
+        removeArea(FIRST);
+
+        assertEquals(cells(0, 0, 2, 3), unneeded);
+        assertTrue(demand.isRequired(new GridPos2i(2, 1, 3)));
+        assertEquals(9, demand.size());
+
+        removeArea(SECOND);
+
+        assertEquals(cells(2, 0, 5, 3), unneeded);
+        assertEquals(0, demand.size());
+    }
+
+    @Test
+    public void removingAnUnknownOwnerReleasesNothing() {
+
+        setArea(FIRST, 0, 0, 3, 3);
+        removeArea(SECOND);
+
+        assertTrue(unneeded.isEmpty());
+        assertEquals(9, demand.size());
+    }
+
+    @Test
+    public void randomMovesMatchACountOfEveryArea() {
+
+        Random random = new Random(3);
+        Object[] owners = { "a", "b", "c", "d" };
+        int[][] areas = new int[owners.length][];
+
+        for (int i = 0; i < 500; i++) {
+
+            int owner = random.nextInt(owners.length);
+
+            if (random.nextInt(8) == 0) {
+                demand.removeArea(owners[owner], gridPos -> { });
+                areas[owner] = null;
+            }
+            else {
+
+                // areas large enough to make the table grow, with negative grid positions.
+                int minX = random.nextInt(40) - 20;
+                int minY = random.nextInt(40) - 20;
+                int[] area = { minX, minY, minX + 1 + random.nextInt(12), minY + 1 + random.nextInt(12) };
+
+                demand.setArea(owners[owner], area[0], area[1], area[2], area[3], gridPos -> { }, gridPos -> { });
+                areas[owner] = area;
+            }
+
+            Set<String> expected = new HashSet<>();
+
+            for (int[] area : areas) {
+                if (area != null) {
+                    expected.addAll(cells(area[0], area[1], area[2], area[3]));
+                }
+            }
+
+            assertEquals(expected.size(), demand.size());
+
+            for (int x = -21; x < 33; x++) {
+                for (int y = -21; y < 33; y++) {
+                    assertEquals(cell(x, y), expected.contains(cell(x, y)), demand.isRequired(x, y));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.jayfella.pixels.grid.collision;
+
+import com.jayfella.pixels.core.GridPos2i;
+import org.dyn4j.dynamics.BodyFixture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GreedyCollisionCellTest {
+
+    private static final int SIZE = 8;
+
+    private static final GridPos2i GRID_POS = new GridPos2i(0, 0, 3);
+
+    private static SolidMask mask(long... rows) {
+        return new SolidMask(SIZE, rows);
+    }
+
+    private static List<BodyFixture> getFixtures(GreedyCollisionCell cell) {
+        return new ArrayList<>(cell.getRigidBodyControl().getBody().getFixtures());
+    }
+
+    @Test
+    public void patchingWithTheSameBlocksChangesNothing() {
+
+        SolidMask mask = mask(0xFF, 0x0F, 0x0F, 0, 0, 0, 0, 0);
+
+        GreedyCollisionCell cell = new GreedyCollisionCell(GRID_POS, mask);
+        CollisionCellPatch patch = GreedyCollisionCell.createPatch(GRID_POS, cell.getRectangles(), mask);
+
+        assertTrue(patch.isEmpty());
+    }
+
+    @Test
+    public void patchingKeepsTheFixturesOfRectanglesThatDidNotChange() {
+
+        // a floor and a separate pillar.
+        GreedyCollisionCell cell = new GreedyCollisionCell(GRID_POS, mask(0xFF, 0, 0x80, 0x80, 0, 0, 0, 0));
+        List<BodyFixture> before = getFixtures(cell);
+
+        assertEquals(2, before.size());
+
+        // a block is added on top of the floor, away from the pillar.
+        SolidMask changed = mask(0xFF, 0x01, 0x80, 0x80, 0, 0, 0, 0);
+
+        CollisionCellPatch patch = GreedyCollisionCell.createPatch(GRID_POS, cell.getRectangles(), changed);
+        assertFalse(patch.isEmpty());
+
+        cell.applyPatch(patch);
+
+        List<BodyFixture> after = getFixtures(cell);
+
+        assertEquals(3, after.size());
+        assertTrue(after.containsAll(before));
+        assertArrayEquals(new GreedyCollisionCell(GRID_POS, changed).getRectangles(), cell.getRectangles());
+    }
+
+    @Test
+    public void randomPatchesMatchACellBuiltFromTheNewBlocks() {
+
+        Random random = new Random(7);
+        long[] rows = new long[SIZE];
+
+        GreedyCollisionCell cell = new GreedyCollisionCell(GRID_POS, mask(rows.clone()));
+
+        for (int i = 0; i < 100; i++) {
+
+            // flip a few blocks.
+            for (int j = 0; j < 3; j++) {
+                rows[random.nextInt(SIZE)] ^= 1L << random.nextInt(SIZE);
+            }
+
+            SolidMask changed = mask(rows.clone());
+            int[] previous = cell.getRectangles();
+
+            cell.applyPatch(GreedyCollisionCell.createPatch(GRID_POS, previous, changed));
+
+            int[] expected = new GreedyCollisionCell(GRID_POS, changed).getRectangles();
+
+            assertArrayEquals(expected, cell.getRectangles());
+            assertEquals(expected.length, getFixtures(cell).size());
+        }
+    }
+
+    @Test
+    public void theRectanglesOfACellAreNotChangedByAPatch() {
+
+        GreedyCollisionCell cell = new GreedyCollisionCell(GRID_POS, mask(0xFF, 0, 0, 0, 0, 0, 0, 0));
+
+        int[] rectangles = cell.getRectangles();
+        int[] copy = rectangles.clone();
+
+        cell.applyPatch(GreedyCollisionCell.createPatch(GRID_POS, rectangles, mask(0x0F, 0, 0, 0, 0, 0, 0, 0)));
+
+        // a patch being made on the executor may still be reading the old array.
+        assertArrayEquals(copy, rectangles);
+        assertEquals(1, cell.getRectangles().length);
+    }
+
+}
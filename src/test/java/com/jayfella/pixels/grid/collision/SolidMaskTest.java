@@ -0,0 +1,136 @@
+package com.jayfella.pixels.grid.collision;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SolidMaskTest {
+
+    private static List<int[]> decompose(SolidMask mask) {
+
+        List<int[]> rectangles = new ArrayList<>();
+        mask.decompose((minX, minY, maxX, maxY) -> rectangles.add(new int[] { minX, minY, maxX, maxY }));
+
+        return rectangles;
+    }
+
+    /**
+     * Checks that the rectangles cover every solid block of the mask exactly once and nothing else.
+     */
+    private static void assertExactCover(SolidMask mask) {
+
+        int size = mask.getSize();
+        boolean[][] covered = new boolean[size][size];
+
+        for (int[] rectangle : decompose(mask)) {
+
+            assertTrue(rectangle[0] >= 0 && rectangle[0] < rectangle[2] && rectangle[2] <= size);
+            assertTrue(rectangle[1] >= 0 && rectangle[1] < rectangle[3] && rectangle[3] <= size);
+
+            for (int y = rectangle[1]; y < rectangle[3]; y++) {
+                for (int x = rectangle[0]; x < rectangle[2]; x++) {
+                    assertTrue("rectangle covers air at " + x + ", " + y, mask.isSolid(x, y));
+                    assertFalse("rectangles overlap at " + x + ", " + y, covered[y][x]);
+                    covered[y][x] = true;
+                }
+            }
+        }
+
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                assertEquals("block at " + x + ", " + y, mask.isSolid(x, y), covered[y][x]);
+            }
+        }
+    }
+
+    @Test
+    public void anEmptyMaskHasNoRectangles() {
+        assertTrue(decompose(new SolidMask(16, new long[16])).isEmpty());
+    }
+
+    @Test
+    public void aFullMaskOfTheLargestSizeIsOneRectangle() {
+
+        long[] rows = new long[SolidMask.MAX_SIZE];
+        Arrays.fill(rows, -1L);
+
+        List<int[]> rectangles = decompose(new SolidMask(SolidMask.MAX_SIZE, rows));
+
+        assertEquals(1, rectangles.size());
+        assertArrayEquals(new int[] { 0, 0, 64, 64 }, rectangles.get(0));
+    }
+
+    @Test
+    public void aRunIsGrownUpwardsWhileTheRowsAboveContainIt() {
+
+        long[] rows = new long[8];
+        rows[0] = 0b0111_1100;
+        rows[1] = 0b0111_1100;
+        rows[2] = 0b1111_1110;
+        rows[3] = 0b0011_0000;
+
+        List<int[]> rectangles = decompose(new SolidMask(8, rows));
+
+        // the run of the first row goes up through the wider third row, which leaves a block on either side of it.
+        assertEquals(4, rectangles.size());
+        assertArrayEquals(new int[] { 2, 0, 7, 3 }, rectangles.get(0));
+        assertArrayEquals(new int[] { 1, 2, 2, 3 }, rectangles.get(1));
+        assertArrayEquals(new int[] { 7, 2, 8, 3 }, rectangles.get(2));
+        assertArrayEquals(new int[] { 4, 3, 6, 4 }, rectangles.get(3));
+    }
+
+    @Test
+    public void fullRowsOfTheLargestSizeAreCoveredExactly() {
+
+        long[] rows = new long[SolidMask.MAX_SIZE];
+
+        for (int y = 0; y < rows.length; y += 3) {
+            rows[y] = -1L;
+        }
+
+        // a row that ends on the highest bit without filling the whole row.
+        rows[1] = 0xF000_0000_0000_0000L;
+
+        assertExactCover(new SolidMask(SolidMask.MAX_SIZE, rows));
+    }
+
+    @Test
+    public void randomMasksAreCoveredExactly() {
+
+        Random random = new Random(42);
+
+        for (int size : new int[] { 8, 16, 32, 64 }) {
+
+            long sizeMask = size == Long.SIZE ? -1L : (1L << size) - 1;
+
+            for (int i = 0; i < 200; i++) {
+
+                long[] rows = new long[size];
+
+                for (int y = 0; y < size; y++) {
+
+                    // a mix of sparse, dense and full rows.
+                    switch (random.nextInt(4)) {
+                        case 0: rows[y] = random.nextLong() & random.nextLong(); break;
+                        case 1: rows[y] = random.nextLong() | random.nextLong(); break;
+                        case 2: rows[y] = -1L; break;
+                        default: rows[y] = random.nextLong(); break;
+                    }
+
+                    rows[y] &= sizeMask;
+                }
+
+                assertExactCover(new SolidMask(size, rows));
+            }
+        }
+    }
+
+}
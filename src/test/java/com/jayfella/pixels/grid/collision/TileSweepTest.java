@@ -0,0 +1,310 @@
+package com.jayfella.pixels.grid.collision;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TileSweepTest {
+
+    private static final double DELTA = 1e-9;
+
+    // the box used by every test: one block wide and two blocks high.
+    private static final double WIDTH = 1;
+    private static final double HEIGHT = 2;
+
+    /**
+     * Creates blocks from a picture, where '#' is solid. The last line is row 0 and the first character of each line
+     * is column 0. Everything outside of the picture is air.
+     */
+    private static TileSweep.SolidBlocks blocks(String... lines) {
+        return (x, y) -> {
+
+            int line = lines.length - 1 - y;
+
+            return line >= 0 && line < lines.length
+                    && x >= 0 && x < lines[line].length()
+                    && lines[line].charAt(x) == '#';
+        };
+    }
+
+    private static final TileSweep.SolidBlocks FLOOR = blocks(
+            "##########"
+    );
+
+    @Test
+    public void fallingOntoTheFloorStopsOnTopOfIt() {
+
+        TileSweep sweep = new TileSweep(FLOOR, WIDTH, HEIGHT);
+        sweep.move(5, 6, 5, 0.5);
+
+        assertEquals(2, sweep.getY(), DELTA);
+        assertTrue(sweep.isBlockedY());
+        assertTrue(sweep.isGrounded());
+        assertFalse(sweep.isBlockedX());
+    }
+
+    @Test
+    public void fallingFasterThanABlockPerStepDoesNotPassThroughTheFloor() {
+
+        TileSweep sweep = new TileSweep(FLOOR, WIDTH, HEIGHT);
+        sweep.move(5, 40, 5, -40);
+
+        assertEquals(2, sweep.getY(), DELTA);
+        assertTrue(sweep.isGrounded());
+    }
+
+    @Test
+    public void restingOnTheFloorIsGrounded() {
+
+        TileSweep sweep = new TileSweep(FLOOR, WIDTH, HEIGHT);
+
+        // gravity pulls the box a little into the floor.
+        sweep.move(5, 2, 5, 1.99);
+
+        assertEquals(2, sweep.getY(), DELTA);
+        assertTrue(sweep.isBlockedY());
+        assertTrue(sweep.isGrounded());
+
+        // the box doesn't move at all.
+        sweep.move(5, 2, 5, 2);
+
+        assertEquals(2, sweep.getY(), DELTA);
+        assertFalse(sweep.isBlockedY());
+        assertTrue(sweep.isGrounded());
+    }
+
+    @Test
+    public void walkingAlongTheFloorIsNotBlocked() {
+
+        TileSweep sweep = new TileSweep(FLOOR, WIDTH, HEIGHT);
+        sweep.move(2.5, 2, 7.25, 2);
+
+        assertEquals(7.25, sweep.getX(), DELTA);
+        assertEquals(2, sweep.getY(), DELTA);
+        assertFalse(sweep.isBlockedX());
+        assertFalse(sweep.isBlockedY());
+        assertTrue(sweep.isGrounded());
+    }
+
+    @Test
+    public void fallingNextToAWallIsNotBlocked() {
+
+        TileSweep.SolidBlocks blocks = blocks(
+                "   #",
+                "   #",
+                "   #",
+                "   #"
+        );
+
+        // the right side of the box touches the wall.
+        TileSweep sweep = new TileSweep(blocks, WIDTH, HEIGHT);
+        sweep.move(2.5, 3, 2.5, 2);
+
+        assertEquals(2, sweep.getY(), DELTA);
+        assertFalse(sweep.isBlockedX());
+        assertFalse(sweep.isBlockedY());
+        assertFalse(sweep.isGrounded());
+    }
+
+    @Test
+    public void walkingIntoAWallStopsAgainstIt() {
+
+        TileSweep.SolidBlocks blocks = blocks(
+                "       #  ",
+                "       #  ",
+                "##########"
+        );
+
+        TileSweep sweep = new TileSweep(blocks, WIDTH, HEIGHT);
+
+        sweep.move(5.5, 2, 7, 2);
+        assertEquals(6.5, sweep.getX(), DELTA);
+        assertTrue(sweep.isBlockedX());
+
+        // pushing against the wall keeps the box where it is.
+        sweep.move(6.5, 2, 6.6, 2);
+        assertEquals(6.5, sweep.getX(), DELTA);
+        assertTrue(sweep.isBlockedX());
+
+        // walking away from the wall is not blocked.
+        sweep.move(6.5, 2, 6, 2);
+        assertEquals(6, sweep.getX(), DELTA);
+        assertFalse(sweep.isBlockedX());
+    }
+
+    @Test
+    public void walkingLeftIntoAWallStopsAgainstIt() {
+
+        TileSweep.SolidBlocks blocks = blocks(
+                "  #       ",
+                "  #       ",
+                "##########"
+        );
+
+        TileSweep sweep = new TileSweep(blocks, WIDTH, HEIGHT);
+        sweep.move(5.5, 2, 0, 2);
+
+        assertEquals(3.5, sweep.getX(), DELTA);
+        assertTrue(sweep.isBlockedX());
+    }
+
+    @Test
+    public void movingFasterThanABlockPerStepDoesNotPassThroughAWall() {
+
+        TileSweep.SolidBlocks blocks = blocks(
+                "       #  ",
+                "       #  ",
+                "##########"
+        );
+
+        TileSweep sweep = new TileSweep(blocks, WIDTH, HEIGHT);
+        sweep.move(1.5, 2, 40, 2);
+
+        assertEquals(6.5, sweep.getX(), DELTA);
+        assertTrue(sweep.isBlockedX());
+    }
+
+    @Test
+    public void aWallBesideOnlyTheTopOfTheBoxStillBlocksIt() {
+
+        TileSweep.SolidBlocks blocks = blocks(
+                "       #  ",
+                "          ",
+                "##########"
+        );
+
+        TileSweep sweep = new TileSweep(blocks, WIDTH, HEIGHT);
+        sweep.move(5.5, 2, 7, 2);
+
+        assertEquals(6.5, sweep.getX(), DELTA);
+        assertTrue(sweep.isBlockedX());
+    }
+
+    @Test
+    public void jumpingIntoACeilingStopsBelowIt() {
+
+        TileSweep.SolidBlocks blocks = blocks(
+                "##########",
+                "          ",
+                "          ",
+                "          ",
+                "          ",
+                "##########"
+        );
+
+        TileSweep sweep = new TileSweep(blocks, WIDTH, HEIGHT);
+        sweep.move(5, 2, 5, 6);
+
+        assertEquals(4, sweep.getY(), DELTA);
+        assertTrue(sweep.isBlockedY());
+        assertFalse(sweep.isGrounded());
+    }
+
+    @Test
+    public void walkingOffALedgeIsNotGrounded() {
+
+        TileSweep.SolidBlocks blocks = blocks(
+                "#####     "
+        );
+
+        TileSweep sweep = new TileSweep(blocks, WIDTH, HEIGHT);
+
+        // the box still overlaps the last block of the ledge.
+        sweep.move(4.5, 2, 5.25, 2);
+        assertTrue(sweep.isGrounded());
+
+        // the box is past the ledge.
+        sweep.move(5.25, 2, 5.75, 1.9);
+        assertEquals(1.9, sweep.getY(), DELTA);
+        assertFalse(sweep.isBlockedY());
+        assertFalse(sweep.isGrounded());
+    }
+
+    @Test
+    public void movingDiagonallyIntoACornerIsBlockedOnBothAxes() {
+
+        TileSweep.SolidBlocks blocks = blocks(
+                "       #  ",
+                "       #  ",
+                "       #  ",
+                "##########"
+        );
+
+        TileSweep sweep = new TileSweep(blocks, WIDTH, HEIGHT);
+        sweep.move(5.5, 3, 8, 1);
+
+        assertEquals(6.5, sweep.getX(), DELTA);
+        assertEquals(2, sweep.getY(), DELTA);
+        assertTrue(sweep.isBlockedX());
+        assertTrue(sweep.isBlockedY());
+        assertTrue(sweep.isGrounded());
+    }
+
+    @Test
+    public void startingInsideABlockCanMoveOutOfIt() {
+
+        TileSweep.SolidBlocks blocks = blocks(
+                "          ",
+                "   #      ",
+                "##########"
+        );
+
+        // the bottom half of the box overlaps the block it starts in.
+        TileSweep sweep = new TileSweep(blocks, WIDTH, HEIGHT);
+        sweep.move(3.5, 2, 5.5, 2);
+
+        assertEquals(5.5, sweep.getX(), DELTA);
+        assertEquals(2, sweep.getY(), DELTA);
+        assertFalse(sweep.isBlockedX());
+        assertFalse(sweep.isBlockedY());
+    }
+
+    @Test
+    public void startingInsideABlockIsStillStoppedByTheBlocksItMovesInto() {
+
+        TileSweep.SolidBlocks blocks = blocks(
+                "      #   ",
+                "   #  #   ",
+                "##########"
+        );
+
+        TileSweep sweep = new TileSweep(blocks, WIDTH, HEIGHT);
+        sweep.move(3.5, 2, 8, 2);
+
+        assertEquals(5.5, sweep.getX(), DELTA);
+        assertTrue(sweep.isBlockedX());
+    }
+
+    @Test
+    public void startingInsideSolidBlocksHoldsTheBoxInPlace() {
+
+        // the blocks of a chunk that hasn't loaded yet are all solid.
+        TileSweep sweep = new TileSweep((x, y) -> true, WIDTH, HEIGHT);
+        sweep.move(5.5, 5, 7, 3);
+
+        assertEquals(5.5, sweep.getX(), DELTA);
+        assertEquals(5, sweep.getY(), DELTA);
+        assertTrue(sweep.isBlockedX());
+        assertTrue(sweep.isBlockedY());
+        assertTrue(sweep.isGrounded());
+
+        // once the chunk has loaded, the box can move up out of the ground it was left in.
+        TileSweep.SolidBlocks loaded = blocks(
+                "     ",
+                "     ",
+                "     ",
+                "     ",
+                "#####",
+                "#####"
+        );
+
+        sweep = new TileSweep(loaded, WIDTH, HEIGHT);
+        sweep.move(2.5, 1.5, 2.5, 3);
+
+        assertEquals(3, sweep.getY(), DELTA);
+        assertFalse(sweep.isBlockedY());
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.jayfella.pixels.tile.light;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LightQueueTest {
+
+    @Test
+    public void aNodeIsPackedAndUnpacked() {
+
+        int node = LightQueue.pack(15, 255, 14, 3);
+
+        assertEquals(15, LightQueue.getX(node));
+        assertEquals(255, LightQueue.getY(node));
+        assertEquals(14, LightQueue.getLight(node));
+        assertEquals(3, LightQueue.getChannel(node));
+    }
+
+    @Test
+    public void growingWhileWrappedKeepsTheOrder() {
+
+        LightQueue queue = new LightQueue(4);
+
+        // move the head to the middle of the buffer, then fill it so the nodes wrap past the end.
+        queue.push(100);
+        queue.push(101);
+        queue.poll();
+        queue.poll();
+
+        for (int node = 0; node < 4; node++) {
+            queue.push(node);
+        }
+
+        // the buffer is full and wrapped, so this push grows it.
+        queue.push(4);
+        queue.push(5);
+
+        assertEquals(6, queue.size());
+
+        for (int node = 0; node < 6; node++) {
+            assertEquals(node, queue.poll());
+        }
+
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void randomPushesAndPollsMatchAQueue() {
+
+        Random random = new Random(5);
+        LightQueue queue = new LightQueue(2);
+        ArrayDeque<Integer> expected = new ArrayDeque<>();
+
+        for (int i = 0; i < 10_000; i++) {
+
+            // push more than poll so the queue keeps growing with its head all over the buffer.
+            if (expected.isEmpty() || random.nextInt(5) < 3) {
+                int node = random.nextInt(1 << 18);
+                queue.push(node);
+                expected.add(node);
+            }
+            else {
+                assertEquals((int) expected.poll(), queue.poll());
+            }
+
+            assertEquals(expected.size(), queue.size());
+        }
+
+        while (!expected.isEmpty()) {
+            assertEquals((int) expected.poll(), queue.poll());
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void pollingAnEmptyQueueThrows() {
+        new LightQueue(4).poll();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void theCapacityMustBeAPowerOfTwo() {
+        new LightQueue(6);
+    }
+
+}
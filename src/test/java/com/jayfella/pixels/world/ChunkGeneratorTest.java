@@ -0,0 +1,64 @@
+package com.jayfella.pixels.world;
+
+import com.jayfella.pixels.core.WorldConstants;
+import com.jayfella.pixels.mesh.QuadMeshPool;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkGeneratorTest {
+
+    // the surface runs through the middle of the second cell.
+    private static final int GROUND = WorldConstants.CELL_SIZE + WorldConstants.CELL_SIZE / 2;
+
+    private StubWorld world;
+    private Chunk chunk;
+
+    @Before
+    public void setUp() {
+        world = new StubWorld((x, y) -> y < GROUND ? 1 : 0);
+        chunk = world.loadChunk(0);
+    }
+
+    @Test
+    public void aUniformSolidCellIsASingleQuad() {
+
+        ChunkCell cell = chunk.getCell(0);
+        assertTrue(cell.isUniform());
+
+        Mesh mesh = world.getChunkGenerator().generateSpriteSheetMesh(cell);
+
+        assertEquals(4, mesh.getVertexCount());
+
+        BoundingBox bound = (BoundingBox) mesh.getBound();
+        assertEquals(new Vector3f(0, 0, 0), bound.getMin(null));
+        assertEquals(new Vector3f(WorldConstants.CELL_SIZE, WorldConstants.CELL_SIZE, 0), bound.getMax(null));
+    }
+
+    @Test
+    public void aMixedCellHasAQuadForEverySolidBlock() {
+
+        ChunkCell cell = chunk.getCell(1);
+        assertFalse(cell.isUniform());
+
+        int solidBlocks = cell.countSolidBlocks();
+        Mesh mesh = world.getChunkGenerator().generateSpriteSheetMesh(cell);
+
+        // the mesh holds as many quads as its size class in the pool.
+        assertEquals((1 << QuadMeshPool.getCapacityClass(solidBlocks)) * 4, mesh.getVertexCount());
+    }
+
+    @Test
+    public void anEmptyCellHasNoQuads() {
+
+        // an empty mesh has no buffers, so it has no vertex count at all.
+        assertFalse(world.getChunkGenerator().generateSpriteSheetMesh(chunk.getCell(5)).getVertexCount() > 0);
+    }
+
+}
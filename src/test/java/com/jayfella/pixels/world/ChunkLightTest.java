@@ -0,0 +1,147 @@
+package com.jayfella.pixels.world;
+
+import com.jayfella.pixels.core.WorldConstants;
+import com.jayfella.pixels.tile.light.LightManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkLightTest {
+
+    private static final int GROUND = 100;
+
+    private StubWorld world;
+    private Chunk chunk;
+
+    private int[][] settledLight;
+
+    @Before
+    public void setUp() {
+
+        // flat ground with a floating platform in chunk 1, so some light has to spread sideways.
+        world = new StubWorld((x, y) -> {
+
+            if (y < GROUND) {
+                return 1;
+            }
+
+            return x >= 18 && x < 26 && y >= 120 && y < 122 ? 1 : 0;
+        });
+
+        for (int gridX = -2; gridX <= 2; gridX++) {
+            world.loadChunk(gridX);
+        }
+
+        for (Chunk loaded : world.getChunks().values()) {
+            loaded.queueBorderLight();
+        }
+
+        settle();
+
+        chunk = world.getChunk(0);
+        settledLight = captureLight();
+    }
+
+    // runs the light engine until every chunk that can spread light has finished.
+    private void settle() {
+
+        for (Chunk loaded : world.getChunks().values()) {
+            loaded.updateLightSolidity();
+            loaded.applyPendingLight();
+        }
+
+        assertTrue(new LightPropagation(world.getChunks(), Long.MAX_VALUE, true).run());
+
+        for (Chunk loaded : world.getChunks().values()) {
+            loaded.swapLightBuffers();
+        }
+    }
+
+    // the light of the chunks that have both neighbors loaded.
+    private int[][] captureLight() {
+
+        int[][] light = new int[3][WorldConstants.CELL_SIZE * WorldConstants.MAX_HEIGHT];
+
+        for (int gridX = -1; gridX <= 1; gridX++) {
+
+            Chunk loaded = world.getChunk(gridX);
+
+            for (int y = 0; y < WorldConstants.MAX_HEIGHT; y++) {
+                for (int x = 0; x < WorldConstants.CELL_SIZE; x++) {
+                    light[gridX + 1][x + y * WorldConstants.CELL_SIZE] = loaded.getLight(x, y);
+                }
+            }
+        }
+
+        return light;
+    }
+
+    private int getSunlight(int x, int y) {
+        return LightManager.getChannel(chunk.getLight(x, y), LightManager.CHANNEL_SUN);
+    }
+
+    @Test
+    public void addingABlockShadowsTheColumnBelowIt() {
+
+        chunk.addBlock(8, 150, 1);
+        settle();
+
+        assertEquals(15, getSunlight(8, 150));
+        assertTrue(getSunlight(8, 149) < 15);
+
+        chunk.removeBlock(8, 150);
+        settle();
+
+        assertArrayEquals(settledLight, captureLight());
+    }
+
+    @Test
+    public void addingAndRemovingABlockInTheSameFrameLeavesTheSkyLit() {
+
+        chunk.addBlock(8, 150, 1);
+        chunk.removeBlock(8, 150);
+        settle();
+
+        for (int y = GROUND; y < WorldConstants.MAX_HEIGHT; y++) {
+            assertEquals("sunlight at y = " + y, 15, getSunlight(8, y));
+        }
+
+        assertArrayEquals(settledLight, captureLight());
+    }
+
+    @Test
+    public void removingAndAddingABlockInTheSameFrameRestoresTheLight() {
+
+        chunk.removeBlock(8, GROUND - 1);
+        chunk.addBlock(8, GROUND - 1, 1);
+        settle();
+
+        assertArrayEquals(settledLight, captureLight());
+    }
+
+    @Test
+    public void removingABlockUnderTheGroundAndAddingItBackRestoresTheLight() {
+
+        chunk.removeBlock(8, GROUND - 3);
+        chunk.addBlock(8, GROUND - 3, 1);
+        settle();
+
+        assertArrayEquals(settledLight, captureLight());
+    }
+
+    @Test
+    public void setLightIsSpreadByTheEngine() {
+
+        chunk.setTorchlight(8, 60, 12);
+        settle();
+
+        assertEquals(12, LightManager.getChannel(chunk.getLight(8, 60), LightManager.CHANNEL_RED));
+
+        // the torch is inside solid ground, so its light loses two levels per block.
+        assertEquals(10, LightManager.getChannel(chunk.getLight(9, 60), LightManager.CHANNEL_RED));
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.jayfella.pixels.world;
+
+import com.jayfella.pixels.core.FrameBudget;
+import com.jayfella.pixels.core.NoiseEvaluator;
+import com.jayfella.pixels.grid.ChunkMap;
+import com.jayfella.pixels.grid.SceneGrid;
+import com.jayfella.pixels.grid.collision.SceneCollisionGrid;
+import com.jayfella.pixels.player.Player;
+import com.jayfella.pixels.tile.Block;
+import com.jayfella.pixels.world.settings.WorldSettings;
+import com.jme3.app.Application;
+import com.jme3.material.Material;
+import com.jme3.math.Vector2f;
+import com.jme3.scene.Node;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A world that only generates and holds chunks, for tests that don't need a scene.
+ */
+public class StubWorld implements World {
+
+    private final NoiseEvaluator noiseEvaluator;
+    private final ChunkGenerator chunkGenerator;
+    private final ChunkMap chunks = new ChunkMap();
+
+    /**
+     * Creates a new world.
+     * @param noiseEvaluator the density of the world. Anything above 0.5 is solid.
+     */
+    public StubWorld(NoiseEvaluator noiseEvaluator) {
+        this.noiseEvaluator = noiseEvaluator;
+        this.chunkGenerator = new ChunkGenerator(this);
+    }
+
+    /**
+     * Generates a chunk and adds it to the world.
+     * @param gridX the grid position of the chunk.
+     * @return the new chunk.
+     */
+    public Chunk loadChunk(int gridX) {
+        Chunk chunk = new Chunk(gridX, this);
+        chunks.put(chunk);
+        return chunk;
+    }
+
+    public ChunkMap getChunks() {
+        return chunks;
+    }
+
+    @Override
+    public Chunk getChunk(int xGrid) {
+        return chunks.get(xGrid);
+    }
+
+    @Override
+    public NoiseEvaluator getWorldNoiseEvaluator() {
+        return noiseEvaluator;
+    }
+
+    @Override
+    public ChunkGenerator getChunkGenerator() {
+        return chunkGenerator;
+    }
+
+    @Override
+    public WorldSettings getWorldSettings() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Node getWorldNode() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SceneGrid getSceneGrid() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SceneCollisionGrid getCollisionGrid() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Material getWorldMaterial() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ExecutorService getThreadPool() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FrameBudget getFrameBudget() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Application getApplication() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Player getPlayer() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MeshScheduler getMeshScheduler() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public BlockEdit beginEdit() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addBlock(int type, Vector2f... worldLocations) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteBlock(Vector2f... worldLocations) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Block getBlock(int x, int y) {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -138,13 +138,19 @@ public class TestWorldNoise extends SimpleApplication {
         // for now
         // ((TestWorldNoiseGenerator)noiseEvaluator).setSeed(System.currentTimeMillis());
 
+        float[] noiseValues = new float[width * height];
+        float[] oreValues = new float[width * height];
+
+        noiseEvaluator.evaluateRegion(0, 0, width, height, noiseValues);
+        oreEvaluator.evaluateRegion(0, 0, width, height, oreValues);
+
         for (int x = 0; x < width; x++) {
             for (int y = 0; y < height; y++) {
 
-                float noise = noiseEvaluator.evaluate(x, y);
+                float noise = noiseValues[x + y * width];
 
                 // ColorRGBA color = new ColorRGBA(noise, noise, noise, 1.0f);
-                int blockType = (int) oreEvaluator.evaluate(x, y);
+                int blockType = (int) oreValues[x + y * width];
 
                 ColorRGBA pixelColor = TestWorldOresNoiseGenerator.blockTypes.get(blockType).clone();
                 pixelColor.multLocal(noise);